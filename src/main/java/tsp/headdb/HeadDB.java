@@ -2,9 +2,11 @@ package tsp.headdb;
 
 import org.bukkit.command.PluginCommand;
 import org.jetbrains.annotations.Nullable;
+import tsp.headdb.core.api.HeadAPI;
 import tsp.headdb.core.command.*;
 import tsp.headdb.core.economy.BasicEconomyProvider;
 import tsp.headdb.core.economy.VaultProvider;
+import tsp.headdb.core.inventory.LazyPaneListener;
 import tsp.headdb.core.storage.Storage;
 import tsp.headdb.core.task.UpdateTask;
 import tsp.headdb.core.util.HeadDBLogger;
@@ -36,7 +38,15 @@ public class HeadDB extends NexusPlugin {
         logger = new HeadDBLogger(getConfig().getBoolean("debug"));
         logger.info("Loading HeadDB - " + getDescription().getVersion());
 
+        int cached = HeadAPI.getDatabase().loadSnapshot();
+        if (cached > 0) {
+            logger.info("Loaded " + cached + " heads from snapshot!");
+        }
+
         new UpdateTask(getConfig().getLong("refresh", 86400L)).schedule(this);
+        if (getConfig().getBoolean("localHeads")) {
+            HeadAPI.getLocalHeadIndex().init(this);
+        }
         logger.info("Loaded " + loadLocalization() + " languages!");
 
         if(!getConfig().getBoolean("only-api")) {
@@ -44,6 +54,7 @@ public class HeadDB extends NexusPlugin {
             initEconomy();
 
             new PaneListener(this);
+            new LazyPaneListener(this);
 
             commandManager = new CommandManager();
             loadCommands();
@@ -57,6 +68,7 @@ public class HeadDB extends NexusPlugin {
 
     @Override
     public void onDisable() {
+        HeadAPI.getDatabase().shutdown();
         if (storage != null) {
             storage.getPlayerStorage().suspend();
             File langFile = new File(getDataFolder(), "langs.data");
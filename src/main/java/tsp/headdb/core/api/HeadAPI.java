@@ -1,19 +1,20 @@
 package tsp.headdb.core.api;
 
-import org.bukkit.Bukkit;
 import tsp.headdb.HeadDB;
 import tsp.headdb.core.api.exceptions.APIOnlyException;
 import tsp.headdb.core.storage.PlayerData;
 import tsp.headdb.core.storage.Storage;
-import tsp.headdb.core.util.Utils;
 import tsp.headdb.implementation.category.Category;
 import tsp.headdb.implementation.head.Head;
 import tsp.headdb.implementation.head.HeadDatabase;
+import tsp.headdb.implementation.head.HeadSnapshot;
 import tsp.headdb.implementation.head.LocalHead;
+import tsp.headdb.implementation.head.LocalHeadIndex;
 import tsp.headdb.implementation.requester.HeadProvider;
 
 import javax.annotation.Nonnull;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -34,6 +35,11 @@ public final class HeadAPI {
      */
     private static final HeadDatabase database = new HeadDatabase(HeadDB.getInstance(), HeadProvider.HEAD_STORAGE);
 
+    /**
+     * The {@link LocalHeadIndex} of players that have joined the server.
+     */
+    private static final LocalHeadIndex localHeads = new LocalHeadIndex();
+
     /**
      * Retrieve a {@link List} of {@link Head} matching the name.
      *
@@ -43,7 +49,11 @@ public final class HeadAPI {
      */
     @Nonnull
     public static List<Head> getHeadsByName(String name, boolean lenient) {
-        return getHeads().stream().filter(head -> (lenient ? Utils.matches(head.getName(), name) : head.getName().equalsIgnoreCase(name))).collect(Collectors.toList());
+        if (lenient) {
+            return database.getSnapshot().searchByName(name);
+        }
+
+        return getHeads().stream().filter(head -> head.getName().equalsIgnoreCase(name)).collect(Collectors.toList());
     }
 
     /**
@@ -65,7 +75,61 @@ public final class HeadAPI {
      * @return The {@link Head}, else empty
      */
     public static Optional<Head> getHeadByExactName(String name, boolean lenient) {
-        return getHeads().stream().filter(head -> (lenient ? Utils.matches(head.getName(), name) : head.getName().equalsIgnoreCase(name))).findAny();
+        if (lenient) {
+            return database.getSnapshot().searchByName(name).stream().findFirst();
+        }
+
+        return getHeads().stream().filter(head -> head.getName().equalsIgnoreCase(name)).findAny();
+    }
+
+    /**
+     * Retrieve a {@link List} of {@link Head} whose tags contain the query.
+     *
+     * @param tags The tags to match against
+     * @return {@link List<Head> Heads}
+     */
+    @Nonnull
+    public static List<Head> getHeadsByTags(String tags) {
+        return database.getSnapshot().searchByTags(tags);
+    }
+
+    /**
+     * Search for heads the same way the search command does.
+     * Queries starting with {@code id:} look up a head by id and {@code tg:} matches tags.
+     * Anything else is a ranked search over names and tags that tolerates typos, best match first.
+     *
+     * @param query The query
+     * @return {@link List<Head> Heads}
+     */
+    @Nonnull
+    public static List<Head> searchHeads(String query) {
+        if (query.length() > 3) {
+            if (query.startsWith("id:")) {
+                try {
+                    return getHeadById(Integer.parseInt(query.substring(3))).map(List::of).orElse(Collections.emptyList());
+                } catch (NumberFormatException ignored) {
+                    return Collections.emptyList();
+                }
+            } else if (query.startsWith("tg:")) {
+                return getHeadsByTags(query.substring(3));
+            }
+        }
+
+        // query is <=3 or has no prefix
+        return database.getSnapshot().search(query, HeadDB.getInstance().getConfig().getInt("search.limit", 1000));
+    }
+
+    /**
+     * Search for heads on the search executor.
+     * The future completes on a worker thread, use the scheduler to touch the Bukkit API with the result.
+     *
+     * @param query The query
+     * @return Future of the {@link List<Head> Heads}
+     * @see #searchHeads(String)
+     */
+    @Nonnull
+    public static CompletableFuture<List<Head>> searchHeadsAsync(String query) {
+        return CompletableFuture.supplyAsync(() -> searchHeads(query), database.getSearchExecutor());
     }
 
     /**
@@ -87,7 +151,7 @@ public final class HeadAPI {
      */
     @Nonnull
     public static Optional<Head> getHeadById(int id) {
-        return getHeads().stream().filter(head -> head.getId() == id).findAny();
+        return database.getHeadById(id);
     }
 
     /**
@@ -98,22 +162,18 @@ public final class HeadAPI {
      */
     @Nonnull
     public static Optional<Head> getHeadByTexture(String texture) {
-        return getHeads().stream().filter(head -> head.getTexture().equals(texture)).findAny();
+        return database.getHeadByTexture(texture);
     }
 
     /**
-     * Retrieve a {@link List} of {@link Head} within the main {@link HeadDatabase}.
+     * Retrieve an unmodifiable {@link List} of every {@link Head} within the main {@link HeadDatabase}.
+     * The list is shared and only replaced when the database updates.
      *
      * @return {@link List<Head> Heads}
      */
     @Nonnull
     public static List<Head> getHeads() {
-        List<Head> result = new ArrayList<>();
-        for (Category category : getHeadsMap().keySet()) {
-            result.addAll(getHeads(category));
-        }
-
-        return result;
+        return database.getAllHeads();
     }
 
     /**
@@ -124,7 +184,7 @@ public final class HeadAPI {
      */
     @Nonnull
     public static List<Head> getHeads(Category category) {
-        return getHeadsMap().get(category);
+        return database.getHeads().getOrDefault(category, Collections.emptyList());
     }
 
     /**
@@ -143,18 +203,39 @@ public final class HeadAPI {
      * @return Amount of heads
      */
     public static int getTotalHeads() {
-        return getHeads().size();
+        return database.getSize();
     }
 
     /**
      * Retrieve a {@link Set} of local heads.
-     * Note that this calculates the heads on every call.
+     * Note that this copies the {@link LocalHeadIndex} on every call, prefer {@link #getLocalHeadList()}.
      *
      * @return {@link Set<LocalHead> Local Heads}
      */
     @Nonnull
     public static Set<LocalHead> getLocalHeads() {
-        return Arrays.stream(Bukkit.getOfflinePlayers()).map(player -> new LocalHead(player.getUniqueId(), player.getName())).collect(Collectors.toSet());
+        return new HashSet<>(localHeads.getHeads());
+    }
+
+    /**
+     * Retrieve an unmodifiable view of the local heads, in the order the players were indexed.
+     * The view is not copied.
+     *
+     * @return {@link List<LocalHead> Local Heads}
+     */
+    @Nonnull
+    public static List<LocalHead> getLocalHeadList() {
+        return localHeads.getHeads();
+    }
+
+    /**
+     * Retrieve the index of local heads, kept up to date as players join.
+     *
+     * @return The {@link LocalHeadIndex}
+     */
+    @Nonnull
+    public static LocalHeadIndex getLocalHeadIndex() {
+        return localHeads;
     }
 
     /**
@@ -172,9 +253,11 @@ public final class HeadAPI {
         if(storage.isEmpty())
             throw new APIOnlyException();
 
+        // Favorites are texture hashes, resolved directly against the current snapshot
+        HeadSnapshot snapshot = database.getSnapshot();
         Optional<PlayerData> data = storage.get().getPlayerStorage().get(player);
         data.ifPresent(playerData -> playerData.favorites()
-                .forEach(texture -> getHeadByTexture(texture)
+                .forEach(key -> snapshot.getHeadByTextureHash(key)
                 .ifPresent(result::add))
         );
         return result;
@@ -6,6 +6,7 @@ import org.jetbrains.annotations.NotNull;
 import tsp.headdb.implementation.category.Category;
 import tsp.headdb.implementation.head.Head;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -14,12 +15,18 @@ public class AsyncHeadsFetchedEvent extends Event {
     private final Map<Category, List<Head>> heads;
     private final String providerName;
     private final long timeTook;
+    private final Map<Category, Long> categoryTimings;
 
-    public AsyncHeadsFetchedEvent(Map<Category, List<Head>> heads, String providerName, long timeTook) {
+    public AsyncHeadsFetchedEvent(Map<Category, List<Head>> heads, String providerName, long timeTook, Map<Category, Long> categoryTimings) {
         super(true);
         this.heads = heads;
         this.providerName = providerName;
         this.timeTook = timeTook;
+        this.categoryTimings = categoryTimings;
+    }
+
+    public AsyncHeadsFetchedEvent(Map<Category, List<Head>> heads, String providerName, long timeTook) {
+        this(heads, providerName, timeTook, Collections.emptyMap());
     }
 
     @NotNull
@@ -44,4 +51,8 @@ public class AsyncHeadsFetchedEvent extends Event {
     public long getTimeTook() {
         return timeTook;
     }
+
+    public Map<Category, Long> getCategoryTimings() {
+        return categoryTimings;
+    }
 }
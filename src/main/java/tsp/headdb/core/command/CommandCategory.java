@@ -4,13 +4,13 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import tsp.headdb.HeadDB;
 import tsp.headdb.core.api.HeadAPI;
+import tsp.headdb.core.inventory.LazyPagedPane;
 import tsp.headdb.core.util.Utils;
 import tsp.headdb.implementation.category.Category;
 import tsp.headdb.implementation.head.Head;
-import tsp.nexuslib.inventory.PagedPane;
+import tsp.headdb.implementation.head.HeadSnapshot;
 
 import java.util.Arrays;
-import java.util.List;
 import java.util.stream.Collectors;
 
 public class CommandCategory extends SubCommand {
@@ -45,9 +45,8 @@ public class CommandCategory extends SubCommand {
                 page = Utils.resolveInt(args[2]) - 1;
             }
 
-            List<Head> heads = HeadAPI.getHeads(category);
-            PagedPane main = Utils.createPaged(player, Utils.translateTitle(getLocalization().getMessage(player.getUniqueId(), "menu.category.name").orElse(category.getName()), heads.size(), category.getName()));
-            Utils.addHeads(player, category, main, heads);
+            HeadSnapshot snapshot = HeadAPI.getDatabase().getSnapshot();
+            LazyPagedPane<Head> main = Utils.createCategoryPane(player, Utils.translateTitle(getLocalization().getMessage(player.getUniqueId(), "menu.category.name").orElse(category.getName()), snapshot.getHeads(category).size(), category.getName()), snapshot, category);
             if (page < 0 || page > main.getPageAmount()) {
                 getLocalization().sendMessage(player.getUniqueId(), "invalidPageIndex", msg -> msg.replace("%pages%", String.valueOf(main.getPageAmount())));
                 return;
@@ -3,17 +3,35 @@ package tsp.headdb.core.command;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
 import tsp.headdb.core.api.HeadAPI;
 import tsp.headdb.core.util.Utils;
 import tsp.headdb.implementation.head.Head;
 
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 public class CommandGive extends SubCommand {
 
+    private static final int MAX_COMPLETIONS = 50;
+
     public CommandGive() {
-        super("give", HeadAPI.getHeads().stream().map(Head::getName).collect(Collectors.toList()), "g");
+        super("give", "g");
+    }
+
+    @Nullable
+    @Override
+    public Collection<String> getCompletions(CommandSender sender, String[] args) {
+        // /hdb give <id> <player> [amount]
+        if (args.length == 2) {
+            return HeadAPI.getDatabase().getSnapshot().complete(args[1], MAX_COMPLETIONS);
+        } else if (args.length == 3) {
+            return null; // player names
+        }
+
+        return Collections.emptyList();
     }
 
     @Override
@@ -47,7 +65,9 @@ public class CommandGive extends SubCommand {
 
         head.ifPresentOrElse(
                 value -> {
-                    player.getInventory().addItem(value.getItem(player.getUniqueId()));
+                    ItemStack item = value.getDecoratedItem(player.getUniqueId());
+                    item.setAmount(amount);
+                    player.getInventory().addItem(item);
                     getLocalization().sendMessage(sender, "giveCommand", msg -> msg.replace("%size%", String.valueOf(amount)).replace("%name%", value.getName()).replace("%receiver%", player.getName()));
                 },
                 () -> getLocalization().sendMessage(sender, "giveCommandInvalid", msg -> msg.replace("%name%", id))
@@ -11,21 +11,22 @@ import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import tsp.headdb.HeadDB;
 import tsp.headdb.core.api.HeadAPI;
+import tsp.headdb.core.inventory.LazyPagedPane;
 import tsp.headdb.core.util.Utils;
 import tsp.headdb.implementation.category.Category;
 import tsp.headdb.implementation.head.Head;
+import tsp.headdb.implementation.head.HeadSnapshot;
 import tsp.headdb.implementation.head.LocalHead;
 import tsp.nexuslib.inventory.Button;
-import tsp.nexuslib.inventory.PagedPane;
 import tsp.nexuslib.inventory.Pane;
 import tsp.nexuslib.util.StringUtils;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 public class CommandMain extends HeadDBCommand implements CommandExecutor, TabCompleter {
@@ -61,11 +62,9 @@ public class CommandMain extends HeadDBCommand implements CommandExecutor, TabCo
                             try {
                                 int page = Integer.parseInt(stateSnapshot.getText());
                                 // to be replaced with own version of anvil-gui
-                                List<Head> heads = HeadAPI.getHeads(category);
-                                PagedPane main = Utils.createPaged(player, Utils.translateTitle(getLocalization().getMessage(player.getUniqueId(), "menu.category.name").orElse(category.getName()), heads.size(), category.getName()));
-                                Utils.addHeads(player, category, main, heads);
+                                HeadSnapshot snapshot = HeadAPI.getDatabase().getSnapshot();
+                                LazyPagedPane<Head> main = Utils.createCategoryPane(player, Utils.translateTitle(getLocalization().getMessage(player.getUniqueId(), "menu.category.name").orElse(category.getName()), snapshot.getHeads(category).size(), category.getName()), snapshot, category);
                                 main.selectPage(page);
-                                main.reRender();
                                 return List.of(AnvilGUI.ResponseAction.openInventory(main.getInventory()));
                             } catch (NumberFormatException nfe) {
                                 return List.of(AnvilGUI.ResponseAction.replaceInputText("Invalid number!"));
@@ -96,30 +95,10 @@ public class CommandMain extends HeadDBCommand implements CommandExecutor, TabCo
                 e.setCancelled(true);
                 new AnvilGUI.Builder()
                         .onClick((slot, stateSnapshot) -> {
-                            // Copied from CommandSearch
-                            List<Head> heads = new ArrayList<>();
-                            List<Head> headList = HeadAPI.getHeads();
-                            if (stateSnapshot.getText().length() > 3) {
-                                if (stateSnapshot.getText().startsWith("id:")) {
-                                    try {
-                                        HeadAPI.getHeadById(Integer.parseInt(stateSnapshot.getText().substring(3))).ifPresent(heads::add);
-                                    } catch (NumberFormatException ignored) {
-                                    }
-                                } else if (stateSnapshot.getText().startsWith("tg:")) {
-                                    heads.addAll(headList.stream().filter(head -> Utils.matches(head.getTags(), stateSnapshot.getText().substring(3))).toList());
-                                } else {
-                                    // no query prefix
-                                    heads.addAll(headList.stream().filter(head -> Utils.matches(head.getName(), stateSnapshot.getText())).toList());
-                                }
-                            } else {
-                                // query is <=3, no point in looking for prefixes
-                                heads.addAll(headList.stream().filter(head -> Utils.matches(head.getName(), stateSnapshot.getText())).toList());
-                            }
-
-                            PagedPane main = Utils.createPaged(player, Utils.translateTitle(getLocalization().getMessage(player.getUniqueId(), "menu.search.name").orElse("&cHeadDB - &eSearch Results"), heads.size(), "None", stateSnapshot.getText()));
-                            Utils.addHeads(player, null, main, heads);
-                            main.reRender();
-                            return AnvilGUI.Response.openInventory(main.getInventory());
+                            String query = stateSnapshot.getText();
+                            // The results are opened once the search completes, the anvil must not wait for it.
+                            Utils.search(player, query, heads -> Utils.createHeadsPane(player, Utils.translateTitle(getLocalization().getMessage(player.getUniqueId(), "menu.search.name").orElse("&cHeadDB - &eSearch Results"), heads.size(), "None", query), null, heads).open(player));
+                            return List.of(AnvilGUI.ResponseAction.close());
                         })
                         .title(StringUtils.colorize(getLocalization().getMessage(player.getUniqueId(), "menu.main.search.name").orElse("Search")))
                         .text("Query")
@@ -130,20 +109,17 @@ public class CommandMain extends HeadDBCommand implements CommandExecutor, TabCo
             // local
             if (getInstance().getConfig().getBoolean("localHeads")) {
                 pane.setButton(getInstance().getConfig().getInt("gui.main.meta.local.slot"), new Button(Utils.getItemFromConfig("gui.main.meta.local.item", Material.COMPASS), e -> {
-                    Set<LocalHead> localHeads = HeadAPI.getLocalHeads();
-                    PagedPane localPane = Utils.createPaged(player, Utils.translateTitle(getLocalization().getMessage(player.getUniqueId(), "menu.main.local.name").orElse("Local Heads"), localHeads.size(), "Local"));
-                    for (LocalHead head : localHeads) {
-                        localPane.addButton(new Button(head.getDecoratedItem(), le -> {
-                            if (le.isLeftClick()) {
-                                ItemStack localItem = head.getDecoratedItem();
-                                if (le.isShiftClick()) {
-                                    localItem.setAmount(64);
-                                }
-
-                                player.getInventory().addItem(localItem);
+                    List<LocalHead> localHeads = HeadAPI.getLocalHeadList();
+                    LazyPagedPane<LocalHead> localPane = Utils.createPaged(player, Utils.translateTitle(getLocalization().getMessage(player.getUniqueId(), "menu.main.local.name").orElse("Local Heads"), localHeads.size(), "Local"), localHeads, LocalHead::getDecoratedItem, (head, le) -> {
+                        if (le.isLeftClick()) {
+                            ItemStack localItem = head.getDecoratedItem();
+                            if (le.isShiftClick()) {
+                                localItem.setAmount(64);
                             }
-                        }));
-                    }
+
+                            player.getInventory().addItem(localItem);
+                        }
+                    });
 
                     localPane.open(player);
                 }));
@@ -182,7 +158,8 @@ public class CommandMain extends HeadDBCommand implements CommandExecutor, TabCo
         } else {
             Optional<SubCommand> sub = getInstance().getCommandManager().orElseThrow().getCommand(args[0]);
             if (sub.isPresent()) {
-                return new ArrayList<>(sub.get().getCompletions());
+                Collection<String> completions = sub.get().getCompletions(sender, args);
+                return completions != null ? new ArrayList<>(completions) : null;
             }
         }
         return null;
@@ -2,13 +2,9 @@ package tsp.headdb.core.command;
 
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
-import tsp.headdb.core.api.HeadAPI;
+import tsp.headdb.core.inventory.LazyPagedPane;
 import tsp.headdb.core.util.Utils;
 import tsp.headdb.implementation.head.Head;
-import tsp.nexuslib.inventory.PagedPane;
-
-import java.util.ArrayList;
-import java.util.List;
 
 public class CommandSearch extends SubCommand {
 
@@ -38,30 +34,12 @@ public class CommandSearch extends SubCommand {
 
         final String query = builder.toString();
 
-        List<Head> heads = new ArrayList<>();
-        List<Head> headList = HeadAPI.getHeads();
-        if (query.length() > 3) {
-            if (query.startsWith("id:")) {
-                try {
-                    HeadAPI.getHeadById(Integer.parseInt(query.substring(3))).ifPresent(heads::add);
-                } catch (NumberFormatException ignored) {
-                }
-            } else if (query.startsWith("tg:")) {
-                heads.addAll(headList.stream().filter(head -> Utils.matches(head.getTags(), query.substring(3))).toList());
-            } else {
-                // no query prefix
-                heads.addAll(headList.stream().filter(head -> Utils.matches(head.getName(), query)).toList());
-            }
-        } else {
-            // query is <=3, no point in looking for prefixes
-            heads.addAll(headList.stream().filter(head -> Utils.matches(head.getName(), query)).toList());
-        }
-
         getLocalization().sendMessage(player.getUniqueId(), "searchCommand", msg -> msg.replace("%query%", query));
-        PagedPane main = Utils.createPaged(player, Utils.translateTitle(getLocalization().getMessage(player.getUniqueId(), "menu.search.name").orElse("&cHeadDB - &eSearch Results"), heads.size(), "None", query));
-        Utils.addHeads(player, null, main, heads);
-        getLocalization().sendMessage(player.getUniqueId(), "searchCommandResults", msg -> msg.replace("%size%", String.valueOf(heads.size())).replace("%query%", query));
-        main.open(player);
+        Utils.search(player, query, heads -> {
+            LazyPagedPane<Head> main = Utils.createHeadsPane(player, Utils.translateTitle(getLocalization().getMessage(player.getUniqueId(), "menu.search.name").orElse("&cHeadDB - &eSearch Results"), heads.size(), "None", query), null, heads);
+            getLocalization().sendMessage(player.getUniqueId(), "searchCommandResults", msg -> msg.replace("%size%", String.valueOf(heads.size())).replace("%query%", query));
+            main.open(player);
+        });
     }
 
 }
\ No newline at end of file
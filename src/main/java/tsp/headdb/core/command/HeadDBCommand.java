@@ -5,6 +5,7 @@ import tsp.headdb.HeadDB;
 import tsp.nexuslib.localization.TranslatableLocalization;
 import tsp.nexuslib.util.Validate;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -40,6 +41,19 @@ public abstract class HeadDBCommand {
         return completions;
     }
 
+    /**
+     * Retrieve the completions for the arguments typed so far.
+     * Returning null lets the server complete online player names.
+     *
+     * @param sender The sender completing the command
+     * @param args The arguments, including the sub-command
+     * @return The completions
+     */
+    @Nullable
+    public Collection<String> getCompletions(CommandSender sender, String[] args) {
+        return getCompletions();
+    }
+
     public String getName() {
         return name;
     }
@@ -0,0 +1,176 @@
+package tsp.headdb.core.inventory;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+import tsp.nexuslib.util.StringUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Paged inventory backed by a list of entries.
+ * Only the entries of the page being shown are turned into items, other pages are rendered when they are selected.
+ * Clicks are resolved back to the entry through its slot, so no button is kept per entry.
+ *
+ * @param <T> Type of the entries
+ */
+public class LazyPagedPane<T> implements InventoryHolder {
+
+    public static final int PAGE_SIZE = 4 * 9;
+    private static final int ROWS = 6;
+    private static final int BACK_SLOT = (ROWS - 1) * 9 + 3;
+    private static final int CURRENT_SLOT = BACK_SLOT + 1;
+    private static final int NEXT_SLOT = BACK_SLOT + 2;
+
+    private final List<T> entries;
+    private final Function<T, ItemStack> renderer;
+    private final BiConsumer<T, InventoryClickEvent> action;
+    private final Inventory inventory;
+    private int page;
+    private boolean rendered;
+    @Nullable private ItemStack backItem;
+    @Nullable private ItemStack currentItem;
+    @Nullable private ItemStack nextItem;
+    @Nullable private Consumer<InventoryClickEvent> currentAction;
+    @Nullable private IntFunction<ItemStack[]> pageSource;
+
+    /**
+     * Create a pane over the entries. The list is referenced, not copied.
+     *
+     * @param title The title of the inventory
+     * @param entries The entries
+     * @param renderer Creates the item of an entry when its page is shown
+     * @param action Handles clicks on the item of an entry
+     */
+    public LazyPagedPane(String title, List<T> entries, Function<T, ItemStack> renderer, BiConsumer<T, InventoryClickEvent> action) {
+        this.entries = entries;
+        this.renderer = renderer;
+        this.action = action;
+        this.inventory = Bukkit.createInventory(this, ROWS * 9, StringUtils.colorize(title));
+    }
+
+    /**
+     * Render the selected page into the inventory.
+     */
+    public void render() {
+        rendered = true;
+        inventory.clear();
+        if (pageSource != null) {
+            ItemStack[] items = pageSource.apply(page);
+            for (int i = 0; i < items.length; i++) {
+                inventory.setItem(i, items[i]);
+            }
+        } else {
+            int start = page * PAGE_SIZE;
+            int end = Math.min(start + PAGE_SIZE, entries.size());
+            for (int i = start; i < end; i++) {
+                inventory.setItem(i - start, renderer.apply(entries.get(i)));
+            }
+        }
+
+        if (page > 0 && backItem != null) {
+            inventory.setItem(BACK_SLOT, backItem);
+        }
+        if (currentItem != null) {
+            ItemStack current = currentItem.clone();
+            current.setAmount(Math.max(1, Math.min(page + 1, current.getMaxStackSize())));
+            inventory.setItem(CURRENT_SLOT, current);
+        }
+        if (page < getPageAmount() - 1 && nextItem != null) {
+            inventory.setItem(NEXT_SLOT, nextItem);
+        }
+    }
+
+    /**
+     * Handle a click in the inventory. The click is always cancelled.
+     *
+     * @param event The event
+     */
+    public void onClick(InventoryClickEvent event) {
+        event.setCancelled(true);
+        int slot = event.getSlot();
+        if (slot < PAGE_SIZE) {
+            int index = page * PAGE_SIZE + slot;
+            if (index < entries.size()) {
+                action.accept(entries.get(index), event);
+            }
+        } else if (slot == BACK_SLOT && page > 0) {
+            selectPage(page - 1);
+        } else if (slot == NEXT_SLOT && page < getPageAmount() - 1) {
+            selectPage(page + 1);
+        } else if (slot == CURRENT_SLOT && currentAction != null) {
+            currentAction.accept(event);
+        }
+    }
+
+    public void open(Player player) {
+        if (!rendered) {
+            render();
+        }
+        player.openInventory(inventory);
+    }
+
+    /**
+     * Select and render a page.
+     *
+     * @param page The page, starting from 0
+     */
+    public void selectPage(int page) {
+        this.page = Math.max(0, Math.min(page, getPageAmount() - 1));
+        render();
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageAmount() {
+        return Math.max(1, (entries.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    public List<T> getEntries() {
+        return entries;
+    }
+
+    public void setBackItem(@Nullable ItemStack backItem) {
+        this.backItem = backItem;
+    }
+
+    public void setCurrentItem(@Nullable ItemStack currentItem) {
+        this.currentItem = currentItem;
+    }
+
+    public void setNextItem(@Nullable ItemStack nextItem) {
+        this.nextItem = nextItem;
+    }
+
+    public void setCurrentAction(@Nullable Consumer<InventoryClickEvent> currentAction) {
+        this.currentAction = currentAction;
+    }
+
+    /**
+     * Render whole pages from a shared source instead of item by item.
+     * The returned arrays are only read, the inventory receives copies of the items.
+     *
+     * @param pageSource Provides the items of a page, in the same order as the entries
+     */
+    public void setPageSource(@Nullable IntFunction<ItemStack[]> pageSource) {
+        this.pageSource = pageSource;
+    }
+
+    @Nonnull
+    @Override
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+}
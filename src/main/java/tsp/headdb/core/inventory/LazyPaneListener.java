@@ -0,0 +1,38 @@
+package tsp.headdb.core.inventory;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+
+/**
+ * Forwards clicks in {@link LazyPagedPane} inventories to the pane.
+ */
+public class LazyPaneListener implements Listener {
+
+    public LazyPaneListener(JavaPlugin plugin) {
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    @EventHandler
+    public void onClick(InventoryClickEvent event) {
+        if (!(event.getView().getTopInventory().getHolder() instanceof LazyPagedPane<?> pane)) {
+            return;
+        }
+
+        // Every click is cancelled, even in the player inventory, since shift and double clicks move items in and out of the pane
+        event.setCancelled(true);
+        if (event.getClickedInventory() == event.getView().getTopInventory()) {
+            pane.onClick(event);
+        }
+    }
+
+    @EventHandler
+    public void onDrag(InventoryDragEvent event) {
+        if (event.getView().getTopInventory().getHolder() instanceof LazyPagedPane<?>) {
+            event.setCancelled(true);
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package tsp.headdb.core.storage;
+
+import tsp.headdb.HeadDB;
+import tsp.warehouse.storage.file.SerializableFileDataManager;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Keeps every player in one serialized file, with changes appended to a {@link PlayerJournal} in between.
+ * Every player is loaded on startup.
+ */
+public class FilePlayerBackend extends SerializableFileDataManager<HashSet<PlayerData>> implements PlayerBackend {
+
+    private final PlayerJournal journal;
+    private final Supplier<HashSet<PlayerData>> snapshot;
+    private volatile boolean replayed;
+
+    /**
+     * @param folder The data folder
+     * @param executor The executor to read and write the file on
+     * @param snapshot Provides a copy of every player in memory, written when the journal is compacted
+     */
+    public FilePlayerBackend(File folder, Executor executor, Supplier<HashSet<PlayerData>> snapshot) {
+        super(new File(folder, "players.data"), executor);
+        this.snapshot = snapshot;
+        this.journal = new PlayerJournal(new File(folder, "players.journal"), this::writeSnapshot);
+    }
+
+    @Override
+    public boolean isLazy() {
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<Collection<PlayerData>> loadAll() {
+        return load().handle((data, ex) -> {
+            Map<UUID, PlayerData> players = new HashMap<>();
+            if (ex != null || data == null) {
+                // Nothing saved yet on the first start
+                HeadDB.getInstance().getLog().debug("No player data loaded" + (ex != null ? ": " + ex.getMessage() : "!"));
+            } else {
+                for (PlayerData entry : data) {
+                    // Files written by older versions hold textures
+                    players.put(entry.uniqueId(), PlayerData.migrate(entry, new HashSet<>()));
+                }
+            }
+
+            try {
+                if (journal.length() > 0) {
+                    int count = journal.replay(entry -> {
+                        PlayerData player = players.computeIfAbsent(entry.uniqueId(), id -> new PlayerData(id, new HashSet<>()));
+                        switch (entry.operation()) {
+                            case PlayerJournal.ADD -> player.favorites().add(entry.key());
+                            case PlayerJournal.REMOVE -> player.favorites().remove(entry.key());
+                            case PlayerJournal.CLEAR -> player.favorites().clear();
+                        }
+                    });
+                    HeadDB.getInstance().getLog().debug("Replayed " + count + " favorite changes from the journal!");
+                    replayed = true;
+                }
+            } catch (IOException ioex) {
+                HeadDB.getInstance().getLog().error("Failed to read favorites journal! | Stack Trace: ");
+                ioex.printStackTrace();
+            }
+
+            return players.values();
+        });
+    }
+
+    @Nullable
+    @Override
+    public PlayerData load(UUID uniqueId) {
+        return null; // Every player is loaded on startup
+    }
+
+    @Override
+    public void start() {
+        if (replayed) {
+            journal.compact(); // Also drops an incomplete record left by a crash
+        }
+        journal.start();
+    }
+
+    @Override
+    public void addFavorite(UUID uniqueId, long key) {
+        journal.append(PlayerJournal.ADD, uniqueId, key);
+    }
+
+    @Override
+    public void removeFavorite(UUID uniqueId, long key) {
+        journal.append(PlayerJournal.REMOVE, uniqueId, key);
+    }
+
+    @Override
+    public void clearFavorites(UUID uniqueId) {
+        journal.append(PlayerJournal.CLEAR, uniqueId, 0);
+    }
+
+    /**
+     * Fold the journal into the data file.
+     */
+    @Override
+    public boolean backup() {
+        try {
+            return journal.compact().get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException ex) {
+            HeadDB.getInstance().getLog().error("Failed to compact favorites journal! | Stack Trace: ");
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Flush the journal and stop writing. The data file is not rewritten, the journal is replayed on the next start.
+     */
+    @Override
+    public void close() {
+        journal.stop(5000);
+    }
+
+    /**
+     * Write every player to the data file. Called by the journal writer when compacting.
+     *
+     * @return If the data file was written
+     */
+    private boolean writeSnapshot() {
+        HashSet<PlayerData> players = snapshot.get();
+        Boolean saved = save(players)
+                .exceptionally(ex -> {
+                    HeadDB.getInstance().getLog().error("Failed to save player data! | Stack Trace: ");
+                    ex.printStackTrace();
+                    return false;
+                })
+                .join();
+
+        if (Boolean.TRUE.equals(saved)) {
+            HeadDB.getInstance().getLog().debug("Saved " + players.size() + " player data!");
+            return true;
+        }
+
+        return false;
+    }
+
+}
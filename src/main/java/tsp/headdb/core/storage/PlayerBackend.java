@@ -0,0 +1,60 @@
+package tsp.headdb.core.storage;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where {@link PlayerStorage} keeps player data.
+ * Changes are passed on one at a time as they happen, the backend decides when they reach the disk.
+ */
+public interface PlayerBackend {
+
+    /**
+     * Whether players are loaded one at a time when they join, instead of all at once on startup.
+     *
+     * @return If this backend loads players lazily
+     */
+    boolean isLazy();
+
+    /**
+     * Load every player. Only called for backends that are not lazy.
+     *
+     * @return Future of every stored player
+     */
+    CompletableFuture<Collection<PlayerData>> loadAll();
+
+    /**
+     * Load a single player. Blocks, never call this on the main thread.
+     *
+     * @param uniqueId The player
+     * @return The player data, null if nothing is stored
+     */
+    @Nullable
+    PlayerData load(UUID uniqueId);
+
+    /**
+     * Start writing changes. Called once the loaded data is in memory.
+     */
+    void start();
+
+    void addFavorite(UUID uniqueId, long key);
+
+    void removeFavorite(UUID uniqueId, long key);
+
+    void clearFavorites(UUID uniqueId);
+
+    /**
+     * Write every change so far to the disk, called periodically.
+     *
+     * @return If the changes were written
+     */
+    boolean backup();
+
+    /**
+     * Write the remaining changes and release the backend.
+     */
+    void close();
+
+}
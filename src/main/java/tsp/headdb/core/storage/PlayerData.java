@@ -1,7 +1,56 @@
 package tsp.headdb.core.storage;
 
+import tsp.headdb.core.api.HeadAPI;
+import tsp.headdb.implementation.head.Head;
+import tsp.headdb.implementation.head.HeadSnapshot;
+import tsp.headdb.implementation.head.HeadTextureIndex;
+
 import java.io.Serializable;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 
-public record PlayerData(UUID uniqueId, Set<String> favorites) implements Serializable {}
\ No newline at end of file
+/**
+ * Favorites of a player, keyed by the {@link HeadTextureIndex#hash(String) hash} of the head texture.
+ * Data saved by older versions holds the textures themselves, see {@link #migrate(PlayerData, Set)}.
+ */
+public record PlayerData(UUID uniqueId, Set<Long> favorites) implements Serializable {
+
+    /**
+     * Retrieve the textures of the favorites, as {@link #favorites()} returned before favorites were hashed.
+     * Favorites whose head is not in the current database are left out.
+     *
+     * @return The textures
+     * @deprecated Use {@link #favorites()} and compare with {@link HeadTextureIndex#hash(String)}
+     */
+    @Deprecated
+    public Set<String> textures() {
+        HeadSnapshot snapshot = HeadAPI.getDatabase().getSnapshot();
+        Set<String> result = new HashSet<>();
+        for (long key : favorites) {
+            snapshot.getHeadByTextureHash(key).map(Head::getTexture).ifPresent(result::add);
+        }
+
+        return result;
+    }
+
+    /**
+     * Convert favorites stored as textures to their hashes.
+     *
+     * @param data The deserialized data, possibly holding textures
+     * @param favorites The set to add the keys to
+     * @return The data with hashed favorites
+     */
+    public static PlayerData migrate(PlayerData data, Set<Long> favorites) {
+        for (Object favorite : (Set<?>) data.favorites()) {
+            if (favorite instanceof Long key) {
+                favorites.add(key);
+            } else if (favorite instanceof String texture) {
+                favorites.add(HeadTextureIndex.hash(texture));
+            }
+        }
+
+        return new PlayerData(data.uniqueId(), favorites);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,281 @@
+package tsp.headdb.core.storage;
+
+import tsp.headdb.HeadDB;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Append only journal of favorite changes.
+ * Every change is queued and written as a small binary record by a single writer thread, so callers never touch the disk.
+ * Compaction writes a full snapshot through the given compactor and truncates the journal afterwards.
+ */
+public class PlayerJournal {
+
+    // Lower operations belong to an older record format, which is rejected instead of being misread
+    public static final byte ADD = 4;
+    public static final byte REMOVE = 5;
+    public static final byte CLEAR = 6;
+
+    private static final long COMPACT_THRESHOLD = 1024 * 1024; // 1 MiB
+    private static final long MAX_BACKOFF = 60000;
+    private static final Object STOP = new Object();
+
+    private final File file;
+    private final BooleanSupplier compactor;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private volatile Thread writer;
+
+    // Only accessed by the writer thread
+    private FileOutputStream stream;
+    private DataOutputStream out;
+    private long base; // Length of the file when it was opened
+    private long synced; // Length of the file up to the last complete batch
+    private long limit; // Length at which the journal is compacted
+
+    /**
+     * @param file The journal file
+     * @param compactor Writes a snapshot of every player, returning whether it succeeded
+     */
+    public PlayerJournal(File file, BooleanSupplier compactor) {
+        this.file = file;
+        this.compactor = compactor;
+    }
+
+    /**
+     * Read every record of the journal.
+     * Reading stops at the first incomplete record, which is what a crash in the middle of a write leaves behind.
+     *
+     * @param consumer Receives the records in order
+     * @return Amount of records read
+     * @throws IOException If the journal could not be read
+     */
+    public int replay(Consumer<Entry> consumer) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte operation;
+                try {
+                    operation = in.readByte();
+                } catch (EOFException ex) {
+                    break;
+                }
+
+                if (operation < ADD || operation > CLEAR) {
+                    HeadDB.getInstance().getLog().warning("Invalid record in favorites journal, ignoring the rest of it.");
+                    break;
+                }
+
+                try {
+                    UUID uniqueId = new UUID(in.readLong(), in.readLong());
+                    consumer.accept(new Entry(operation, uniqueId, operation != CLEAR ? in.readLong() : 0));
+                    count++;
+                } catch (EOFException ex) {
+                    HeadDB.getInstance().getLog().warning("Incomplete record at the end of the favorites journal, ignoring it.");
+                    break;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Retrieve the length of the journal file.
+     *
+     * @return The length in bytes, 0 if it does not exist
+     */
+    public long length() {
+        return file.length();
+    }
+
+    /**
+     * Start the writer thread. Records appended before are written once it runs.
+     */
+    public void start() {
+        Thread thread = HeadDBThreadFactory.FACTORY.newThread(this::run);
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    /**
+     * Queue a record.
+     *
+     * @param operation The operation
+     * @param uniqueId The player
+     * @param key The favorite key, ignored for {@link #CLEAR}
+     */
+    public void append(byte operation, UUID uniqueId, long key) {
+        queue.add(new Entry(operation, uniqueId, key));
+    }
+
+    /**
+     * Queue a compaction. Records queued before it are folded into the snapshot.
+     *
+     * @return Future completed with whether the snapshot was written
+     */
+    public CompletableFuture<Boolean> compact() {
+        Compaction compaction = new Compaction(new CompletableFuture<>());
+        queue.add(compaction);
+        return compaction.result();
+    }
+
+    /**
+     * Write the remaining records and stop the writer thread.
+     *
+     * @param timeout Maximum time to wait in milliseconds
+     */
+    public void stop(long timeout) {
+        if (writer == null) {
+            start(); // Still write what was queued before the writer was started
+        }
+
+        Thread thread = writer;
+        queue.add(STOP);
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>();
+        long backoff = 0;
+        while (true) {
+            try {
+                if (batch.isEmpty()) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch);
+                }
+
+                if (out == null) {
+                    open(true);
+                }
+
+                boolean stop = false;
+                for (Object next : batch) {
+                    if (next == STOP) {
+                        stop = true;
+                        break;
+                    } else if (next instanceof Compaction compaction) {
+                        // A retried batch folds again, completing twice keeps the first result
+                        compaction.result().complete(fold());
+                    } else {
+                        write((Entry) next);
+                    }
+                }
+
+                // One flush per batch of records
+                out.flush();
+                stream.getFD().sync();
+                synced = base + out.size();
+                batch.clear();
+                backoff = 0;
+                if (stop) {
+                    out.close();
+                    return;
+                }
+
+                if (base + out.size() > limit) {
+                    fold();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException ex) {
+                // Keep the batch and write it again once the journal can be reopened
+                backoff = backoff == 0 ? 1000 : Math.min(backoff * 2, MAX_BACKOFF);
+                HeadDB.getInstance().getLog().error("Failed to write favorites journal, retrying in " + (backoff / 1000) + "s! | Stack Trace: ");
+                ex.printStackTrace();
+                try {
+                    close();
+                    Thread.sleep(backoff);
+                } catch (InterruptedException iex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the stream after a failure and drop the partially written batch, it is written again on retry.
+     */
+    private void close() {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // The stream is discarded either way
+        }
+        out = null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() > synced) {
+                raf.setLength(synced);
+            }
+        } catch (IOException ex) {
+            HeadDB.getInstance().getLog().debug("Failed to truncate favorites journal: " + ex.getMessage());
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        out.writeByte(entry.operation());
+        out.writeLong(entry.uniqueId().getMostSignificantBits());
+        out.writeLong(entry.uniqueId().getLeastSignificantBits());
+        if (entry.operation() != CLEAR) {
+            out.writeLong(entry.key());
+        }
+    }
+
+    private boolean fold() throws IOException {
+        out.flush();
+        if (compactor.getAsBoolean()) {
+            // Everything written so far is part of the snapshot now
+            out.close();
+            open(false);
+            return true;
+        }
+
+        limit = base + out.size() + COMPACT_THRESHOLD; // Do not retry on every write
+        return false;
+    }
+
+    private void open(boolean append) throws IOException {
+        stream = new FileOutputStream(file, append);
+        out = new DataOutputStream(new BufferedOutputStream(stream));
+        base = append ? file.length() : 0;
+        synced = base;
+        limit = Math.max(base, COMPACT_THRESHOLD);
+    }
+
+    public record Entry(byte operation, UUID uniqueId, long key) {}
+
+    private record Compaction(CompletableFuture<Boolean> result) {}
+
+}
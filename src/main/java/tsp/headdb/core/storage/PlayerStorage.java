@@ -1,37 +1,130 @@
 package tsp.headdb.core.storage;
 
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import tsp.headdb.HeadDB;
-import tsp.warehouse.storage.file.SerializableFileDataManager;
+import tsp.headdb.implementation.head.HeadTextureIndex;
 
-import java.io.File;
+import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 
-public class PlayerStorage extends SerializableFileDataManager<HashSet<PlayerData>> {
+/**
+ * Thread safe storage of player data.
+ * Favorites are kept in concurrent sets and changed in place. Every change is passed on to the {@link PlayerBackend},
+ * which decides when it reaches the disk.
+ * With a lazy backend only online players are kept, players are loaded when they join and unloaded a while after they quit.
+ */
+public class PlayerStorage implements Listener {
 
-    private final Map<UUID, PlayerData> players = new HashMap<>();
+    private final Map<UUID, PlayerData> players = new ConcurrentHashMap<>();
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, Object> unloading = new ConcurrentHashMap<>(); // Token of the pending unload per player
+    private final Map<UUID, Delta> pending = new ConcurrentHashMap<>(); // Edits made while a player is loading
+    private volatile boolean loadingAll;
+    private final PlayerBackend backend;
+    private final long unloadDelay;
+    private final BiConsumer<Runnable, Long> scheduler;
+    private final Predicate<UUID> online;
 
-    public PlayerStorage(HeadDB instance, Storage storage) {
-        super(new File(instance.getDataFolder(), "data/players.data"), storage.getExecutor());
+    public PlayerStorage(PlayerBackend backend) {
+        this(backend,
+                Math.max(0, HeadDB.getInstance().getConfig().getLong("storage.unloadDelay", 300)) * 20,
+                (task, delay) -> Bukkit.getScheduler().runTaskLater(HeadDB.getInstance(), task, delay),
+                uniqueId -> Bukkit.getPlayer(uniqueId) != null);
+    }
+
+    /**
+     * @param backend The backend
+     * @param unloadDelay Ticks to keep a player in memory after they quit
+     * @param scheduler Runs a task on the main thread after a delay in ticks
+     * @param online Checks whether a player is online
+     */
+    PlayerStorage(PlayerBackend backend, long unloadDelay, BiConsumer<Runnable, Long> scheduler, Predicate<UUID> online) {
+        this.backend = backend;
+        this.unloadDelay = unloadDelay;
+        this.scheduler = scheduler;
+        this.online = online;
     }
 
     public void set(PlayerData data) {
-        this.players.put(data.uniqueId(), data);
+        // Computing serializes changes per player, so the backend receives them in the same order
+        players.compute(data.uniqueId(), (id, current) -> {
+            Delta delta = pendingDelta(id);
+            if (delta != null) {
+                delta.replace(data.favorites());
+            }
+
+            backend.clearFavorites(id);
+            for (long key : data.favorites()) {
+                backend.addFavorite(id, key);
+            }
+            dirty.add(id);
+            return concurrent(data);
+        });
     }
 
-    public Set<String> getFavorites(UUID uuid) {
-        return players.containsKey(uuid) ? players.get(uuid).favorites() : new HashSet<>();
+    /**
+     * Retrieve the favorites of a player, keyed by texture hash.
+     *
+     * @param uuid The player
+     * @return The texture hashes
+     * @see HeadTextureIndex#hash(String)
+     */
+    public Set<Long> getFavorites(UUID uuid) {
+        PlayerData data = players.get(uuid);
+        return data != null ? Collections.unmodifiableSet(data.favorites()) : Collections.emptySet();
     }
 
     public void addFavorite(UUID uuid, String texture) {
-        Set<String> fav = getFavorites(uuid);
-        fav.add(texture);
-        players.put(uuid, new PlayerData(uuid, new HashSet<>(fav)));
+        addFavorite(uuid, HeadTextureIndex.hash(texture));
+    }
+
+    public void addFavorite(UUID uuid, long key) {
+        players.compute(uuid, (id, data) -> {
+            if (data == null) {
+                data = new PlayerData(id, ConcurrentHashMap.newKeySet());
+            }
+
+            Delta delta = pendingDelta(id);
+            if (delta != null) {
+                delta.add(key);
+            }
+
+            if (data.favorites().add(key)) {
+                backend.addFavorite(id, key);
+                dirty.add(id);
+            }
+            return data;
+        });
     }
 
     public void removeFavorite(UUID uuid, String texture) {
-        Set<String> fav = getFavorites(uuid);
-        fav.remove(texture);
-        players.put(uuid, new PlayerData(uuid, new HashSet<>(fav)));
+        removeFavorite(uuid, HeadTextureIndex.hash(texture));
+    }
+
+    public void removeFavorite(UUID uuid, long key) {
+        players.compute(uuid, (id, data) -> {
+            Delta delta = pendingDelta(id);
+            if (delta != null) {
+                delta.remove(key);
+            }
+
+            // While loading the favorite may only be stored, not in memory yet
+            boolean removed = data != null && data.favorites().remove(key);
+            if (removed || delta != null) {
+                backend.removeFavorite(id, key);
+                dirty.add(id);
+            }
+            return data;
+        });
     }
 
     public Optional<PlayerData> get(UUID uuid) {
@@ -42,32 +135,239 @@ public class PlayerStorage extends SerializableFileDataManager<HashSet<PlayerDat
         return Collections.unmodifiableMap(players);
     }
 
+    /**
+     * Check if there are changes since the last backup.
+     *
+     * @return If any player data changed since the last backup
+     */
+    public boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
+    public PlayerBackend getBackend() {
+        return backend;
+    }
+
     public void init() {
-        load().whenComplete((data, ex) -> {
-            for (PlayerData entry : data) {
-                players.put(entry.uniqueId(), entry);
+        if (backend.isLazy()) {
+            // Players are loaded when they join, only the ones already online (after a reload) are loaded now
+            HeadDB.getInstance().getServer().getPluginManager().registerEvents(this, HeadDB.getInstance());
+            List<UUID> joined = Bukkit.getOnlinePlayers().stream().map(Player::getUniqueId).toList();
+            Bukkit.getScheduler().runTaskAsynchronously(HeadDB.getInstance(), () -> {
+                joined.forEach(this::load);
+                backend.start();
+                HeadDB.getInstance().getLog().debug("Loaded " + players.size() + " player data!");
+            });
+            return;
+        }
+
+        loadingAll = true;
+        backend.loadAll().whenComplete((data, ex) -> {
+            if (ex != null) {
+                HeadDB.getInstance().getLog().error("Failed to load player data! | Stack Trace: ");
+                ex.printStackTrace();
+            } else {
+                for (PlayerData entry : data) {
+                    merge(entry.uniqueId(), entry);
+                }
             }
 
-            HeadDB.getInstance().getLog().debug("Loaded " + players.values().size() + " player data!");
+            // Players missing from the loaded data already hold every edit in memory
+            loadingAll = false;
+            pending.clear();
+            backend.start();
+            HeadDB.getInstance().getLog().debug("Loaded " + players.size() + " player data!");
         });
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            join(event.getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        quit(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Load a joining player, cancelling a pending unload. Blocks, never call this on the main thread.
+     *
+     * @param uniqueId The player
+     */
+    void join(UUID uniqueId) {
+        unloading.remove(uniqueId); // Rejoined before being unloaded
+        load(uniqueId);
+    }
+
+    /**
+     * Schedule a player that quit to be unloaded.
+     *
+     * @param uniqueId The player
+     */
+    void quit(UUID uniqueId) {
+        Object token = new Object();
+        unloading.put(uniqueId, token);
+        // Kept a while, so reconnecting does not hit the database again
+        scheduler.accept(() -> unload(uniqueId, token), unloadDelay);
+    }
+
+    /**
+     * Drop a player from memory unless they joined again since quitting.
+     * Their changes are already queued in the backend, which flushes them before loading the player again.
+     *
+     * @param uniqueId The player
+     * @param token The token of the unload, a newer quit or join replaces it
+     */
+    private void unload(UUID uniqueId, Object token) {
+        // Removing inside compute makes a concurrent pre-login wait for it, so it never sees data about to be dropped
+        unloading.computeIfPresent(uniqueId, (id, current) -> {
+            if (current != token) {
+                return current;
+            }
+
+            if (!online.test(id)) {
+                players.remove(id);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Load a player from a lazy backend. Blocks, never call this on the main thread.
+     *
+     * @param uniqueId The player
+     */
+    private void load(UUID uniqueId) {
+        boolean[] loading = new boolean[1];
+        players.compute(uniqueId, (id, current) -> {
+            if (current != null) {
+                return current;
+            }
+
+            // Edits made until the data arrives are recorded against the pending entry
+            pending.put(id, new Delta());
+            loading[0] = true;
+            return new PlayerData(id, ConcurrentHashMap.newKeySet());
+        });
+
+        if (loading[0]) {
+            merge(uniqueId, backend.load(uniqueId));
+        }
+    }
+
+    /**
+     * Replace the data of a player with the loaded data, with the edits made while it was loading applied on top.
+     *
+     * @param uniqueId The player
+     * @param loaded The loaded data, null if nothing is stored
+     */
+    private void merge(UUID uniqueId, @Nullable PlayerData loaded) {
+        players.compute(uniqueId, (id, current) -> {
+            PlayerData merged = loaded != null ? concurrent(loaded) : new PlayerData(id, ConcurrentHashMap.newKeySet());
+            Delta delta = pending.remove(id);
+            if (delta != null) {
+                delta.apply(merged.favorites());
+            }
+            return merged;
+        });
+    }
+
+    /**
+     * Retrieve the edits recorded for a player that is loading. Must be called while computing the player.
+     *
+     * @param uniqueId The player
+     * @return The edits, null if the player is not loading
+     */
+    @Nullable
+    private Delta pendingDelta(UUID uniqueId) {
+        return loadingAll ? pending.computeIfAbsent(uniqueId, id -> new Delta()) : pending.get(uniqueId);
+    }
+
     public void backup() {
-        save(new HashSet<>(players.values())).whenComplete((success, ex) -> HeadDB.getInstance().getLog().debug("Saved " + players.values().size() + " player data!"));
+        if (dirty.isEmpty()) {
+            HeadDB.getInstance().getLog().debug("No player data changed, skipping backup.");
+            return;
+        }
+
+        Set<UUID> saving = new HashSet<>(dirty);
+        dirty.removeAll(saving);
+        boolean saved;
+        try {
+            saved = backend.backup();
+        } catch (RuntimeException ex) {
+            HeadDB.getInstance().getLog().error("Failed to back up player data! | Stack Trace: ");
+            ex.printStackTrace();
+            saved = false;
+        }
+
+        if (!saved) {
+            // Retried with the next backup
+            dirty.addAll(saving);
+            HeadDB.getInstance().getLog().warning("Player data was not backed up, retrying with the next backup.");
+        }
     }
 
     public void suspend() {
-        Boolean saved = save(new HashSet<>(players.values()))
-                .exceptionally(ex -> {
-                    HeadDB.getInstance().getLog().error("Failed to save player data! | Stack Trace: ");
-                    ex.printStackTrace();
-                    return false;
-                })
-                .join();
-
-        if (Boolean.TRUE.equals(saved)) {
-            HeadDB.getInstance().getLog().debug("Saved " + players.values().size() + " player data!");
+        backend.close();
+    }
+
+    /**
+     * Copy the player data into plain sets, never handing out a set that is being changed.
+     *
+     * @return The copy
+     */
+    public HashSet<PlayerData> snapshot() {
+        HashSet<PlayerData> snapshot = new HashSet<>();
+        for (PlayerData data : players.values()) {
+            snapshot.add(new PlayerData(data.uniqueId(), new HashSet<>(data.favorites())));
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Favorites added and removed while a player was loading, applied to the loaded data once it arrives.
+     */
+    private static final class Delta {
+
+        private final Set<Long> added = new HashSet<>();
+        private final Set<Long> removed = new HashSet<>();
+        private boolean cleared;
+
+        void add(long key) {
+            added.add(key);
+            removed.remove(key);
         }
+
+        void remove(long key) {
+            removed.add(key);
+            added.remove(key);
+        }
+
+        void replace(Set<Long> favorites) {
+            cleared = true;
+            added.clear();
+            added.addAll(favorites);
+            removed.clear();
+        }
+
+        void apply(Set<Long> favorites) {
+            if (cleared) {
+                favorites.clear();
+            }
+            favorites.removeAll(removed);
+            favorites.addAll(added);
+        }
+
+    }
+
+    private static PlayerData concurrent(PlayerData data) {
+        Set<Long> favorites = ConcurrentHashMap.newKeySet();
+        favorites.addAll(data.favorites());
+        return new PlayerData(data.uniqueId(), favorites);
     }
 
-}
\ No newline at end of file
+}
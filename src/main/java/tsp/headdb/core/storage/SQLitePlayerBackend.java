@@ -0,0 +1,233 @@
+package tsp.headdb.core.storage;
+
+import tsp.headdb.HeadDB;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps favorites in an embedded SQLite database, one row per favorite holding the texture hash.
+ * Players are loaded one at a time when they join. Changes are queued and written in batches on the storage executor.
+ */
+public class SQLitePlayerBackend implements PlayerBackend {
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+
+    private final File file;
+    private final Executor executor;
+    private static final String INSERT = "INSERT OR IGNORE INTO favorite_heads (player, head) VALUES (?, ?)";
+
+    private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private Connection connection; // Guarded by this
+
+    /**
+     * @param file The database file
+     * @param executor The executor to write changes on
+     */
+    public SQLitePlayerBackend(File file, Executor executor) {
+        this.file = file;
+        this.executor = executor;
+    }
+
+    /**
+     * Open the database and create the table if needed.
+     *
+     * @return If the table was just created
+     * @throws SQLException If the database could not be opened
+     */
+    public synchronized boolean open() throws SQLException {
+        boolean created = !file.exists();
+        connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            // The primary key doubles as the index for lookups by player
+            statement.execute("CREATE TABLE IF NOT EXISTS favorite_heads (player TEXT NOT NULL, head INTEGER NOT NULL, PRIMARY KEY (player, head))");
+        }
+
+        return created;
+    }
+
+    @Override
+    public boolean isLazy() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Collection<PlayerData>> loadAll() {
+        return CompletableFuture.completedFuture(Collections.emptyList());
+    }
+
+    @Nullable
+    @Override
+    public synchronized PlayerData load(UUID uniqueId) {
+        write(); // Changes still queued for this player must be visible
+        try (PreparedStatement statement = connection.prepareStatement("SELECT head FROM favorite_heads WHERE player = ?")) {
+            statement.setString(1, uniqueId.toString());
+            try (ResultSet result = statement.executeQuery()) {
+                Set<Long> favorites = ConcurrentHashMap.newKeySet();
+                while (result.next()) {
+                    favorites.add(result.getLong(1));
+                }
+
+                return favorites.isEmpty() ? null : new PlayerData(uniqueId, favorites);
+            }
+        } catch (SQLException ex) {
+            HeadDB.getInstance().getLog().error("Failed to load player data for " + uniqueId + " | Stack Trace: ");
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Insert players all at once, used when migrating from another backend.
+     *
+     * @param players The players
+     * @throws SQLException If the players could not be inserted
+     */
+    public synchronized void insert(Collection<PlayerData> players) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+            for (PlayerData data : players) {
+                for (long key : data.favorites()) {
+                    statement.setString(1, data.uniqueId().toString());
+                    statement.setLong(2, key);
+                    statement.addBatch();
+                }
+            }
+
+            statement.executeBatch();
+            connection.commit();
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public void start() {
+        // Changes are written as they are queued
+    }
+
+    @Override
+    public void addFavorite(UUID uniqueId, long key) {
+        queue(new Change(ADD, uniqueId, key));
+    }
+
+    @Override
+    public void removeFavorite(UUID uniqueId, long key) {
+        queue(new Change(REMOVE, uniqueId, key));
+    }
+
+    @Override
+    public void clearFavorites(UUID uniqueId) {
+        queue(new Change(CLEAR, uniqueId, 0));
+    }
+
+    /**
+     * Write the changes still queued. They are normally written in batches as they happen.
+     */
+    @Override
+    public synchronized boolean backup() {
+        write();
+        return changes.isEmpty();
+    }
+
+    @Override
+    public synchronized void close() {
+        write();
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException ex) {
+            HeadDB.getInstance().getLog().error("Failed to close player database! | Stack Trace: ");
+            ex.printStackTrace();
+        }
+    }
+
+    private void queue(Change change) {
+        changes.add(change);
+        // One write task at a time, it picks up every change queued until it runs
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                scheduled.set(false);
+                synchronized (this) {
+                    write();
+                }
+            });
+        }
+    }
+
+    /**
+     * Write the queued changes in one transaction. Must hold the lock.
+     */
+    private void write() {
+        if (changes.isEmpty() || connection == null) {
+            return;
+        }
+
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement add = connection.prepareStatement(INSERT);
+                 PreparedStatement remove = connection.prepareStatement("DELETE FROM favorite_heads WHERE player = ? AND head = ?");
+                 PreparedStatement clear = connection.prepareStatement("DELETE FROM favorite_heads WHERE player = ?")) {
+                // Applied in order, batching would reorder changes across statements.
+                // Changes stay queued until the transaction commits, a failed write is retried with the next one.
+                List<Change> batch = new ArrayList<>(changes);
+                for (Change change : batch) {
+                    PreparedStatement statement = switch (change.operation()) {
+                        case ADD -> add;
+                        case REMOVE -> remove;
+                        default -> clear;
+                    };
+                    statement.setString(1, change.uniqueId().toString());
+                    if (change.operation() != CLEAR) {
+                        statement.setLong(2, change.key());
+                    }
+                    statement.executeUpdate();
+                }
+
+                connection.commit();
+                // Changes are only removed while holding the lock, so the batch is still at the head of the queue
+                for (int i = 0; i < batch.size(); i++) {
+                    changes.poll();
+                }
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            HeadDB.getInstance().getLog().error("Failed to write player data, the changes are kept for the next write! | Stack Trace: ");
+            ex.printStackTrace();
+        }
+    }
+
+    private record Change(byte operation, UUID uniqueId, long key) {}
+
+}
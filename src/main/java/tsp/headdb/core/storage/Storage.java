@@ -3,6 +3,10 @@ package tsp.headdb.core.storage;
 import tsp.headdb.HeadDB;
 
 import java.io.File;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -14,7 +18,7 @@ public class Storage {
     public Storage(int threads) {
         executor = Executors.newFixedThreadPool(threads, HeadDBThreadFactory.FACTORY);
         validateDataDirectory();
-        playerStorage = new PlayerStorage(HeadDB.getInstance(), this);
+        playerStorage = new PlayerStorage(createBackend(HeadDB.getInstance().getConfig().getString("storage.type", "SQLITE")));
     }
 
     public PlayerStorage getPlayerStorage() {
@@ -25,6 +29,63 @@ public class Storage {
         return executor;
     }
 
+    private PlayerBackend createBackend(String type) {
+        File folder = new File(HeadDB.getInstance().getDataFolder(), "data");
+        if (type.toUpperCase(Locale.ROOT).equals("SQLITE")) {
+            File file = new File(folder, "players.db");
+            boolean created = !file.exists();
+            SQLitePlayerBackend backend = new SQLitePlayerBackend(file, executor);
+            try {
+                if (backend.open()) {
+                    migrate(folder, backend);
+                }
+                HeadDB.getInstance().getLog().debug("Storage: SQLITE");
+                return backend;
+            } catch (SQLException | RuntimeException ex) {
+                HeadDB.getInstance().getLog().error("Failed to open player database, falling back to file storage! | Stack Trace: ");
+                ex.printStackTrace();
+                backend.close();
+                if (created) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete(); // Migrate again on the next start
+                }
+            }
+        } else if (!type.toUpperCase(Locale.ROOT).equals("FILE")) {
+            HeadDB.getInstance().getLog().warning("Unknown storage type '" + type + "', using file storage.");
+        }
+
+        HeadDB.getInstance().getLog().debug("Storage: FILE");
+        return new FilePlayerBackend(folder, executor, () -> playerStorage.snapshot());
+    }
+
+    /**
+     * Copy the players of the file storage into a new database, so switching keeps every favorite.
+     *
+     * @param folder The data folder
+     * @param backend The new database
+     * @throws SQLException If the players could not be inserted
+     */
+    private void migrate(File folder, SQLitePlayerBackend backend) throws SQLException {
+        File data = new File(folder, "players.data");
+        File journal = new File(folder, "players.journal");
+        if (!data.exists() && !journal.exists()) {
+            return;
+        }
+
+        // The snapshot supplier is never called, the journal is only read
+        Collection<PlayerData> players = new FilePlayerBackend(folder, executor, HashSet::new).loadAll().join();
+        backend.insert(players);
+        rename(data);
+        rename(journal);
+        HeadDB.getInstance().getLog().info("Migrated " + players.size() + " player data to the database!");
+    }
+
+    private void rename(File file) {
+        if (file.exists() && !file.renameTo(new File(file.getParentFile(), file.getName() + ".migrated"))) {
+            HeadDB.getInstance().getLog().warning("Failed to rename " + file.getName() + " after migrating it.");
+        }
+    }
+
     private void validateDataDirectory() {
         //noinspection ResultOfMethodCallIgnored
         new File(HeadDB.getInstance().getDataFolder(), "data").mkdir();
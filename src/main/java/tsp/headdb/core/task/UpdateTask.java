@@ -5,10 +5,12 @@ import tsp.headdb.HeadDB;
 import tsp.headdb.core.api.HeadAPI;
 import tsp.headdb.core.api.events.AsyncHeadsFetchedEvent;
 import tsp.headdb.core.storage.Storage;
+import tsp.headdb.implementation.category.Category;
 import tsp.headdb.implementation.head.Head;
 import tsp.nexuslib.task.Task;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
@@ -32,12 +34,16 @@ public class UpdateTask implements Task {
 
             String providerName = HeadAPI.getDatabase().getRequester().getProvider().name();
 
+            Map<Category, Long> timings = HeadAPI.getDatabase().getTimings();
+
             HeadDB.getInstance().getLog().debug("Fetched: " + size + " Heads | Provider: " + providerName + " | Time: " + time + "ms (" + TimeUnit.MILLISECONDS.toSeconds(time) + "s)");
+            timings.forEach((category, took) -> HeadDB.getInstance().getLog().trace("Fetched category: " + category.getName() + " | Time: " + took + "ms"));
             Bukkit.getPluginManager().callEvent(
                     new AsyncHeadsFetchedEvent(
                             heads,
                             providerName,
-                            time));
+                            time,
+                            timings));
         });
         Optional<Storage> storage = HeadDB.getInstance().getStorage();
         if(storage.isPresent())
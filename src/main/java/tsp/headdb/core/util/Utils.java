@@ -1,23 +1,24 @@
 package tsp.headdb.core.util;
 
-import com.mojang.authlib.GameProfile;
-import com.mojang.authlib.properties.Property;
 import me.clip.placeholderapi.PlaceholderAPI;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import tsp.headdb.HeadDB;
 import tsp.headdb.core.api.HeadAPI;
 import tsp.headdb.core.economy.BasicEconomyProvider;
 import tsp.headdb.core.hook.Hooks;
+import tsp.headdb.core.inventory.LazyPagedPane;
 import tsp.headdb.implementation.category.Category;
 import tsp.headdb.implementation.head.Head;
+import tsp.headdb.implementation.head.HeadSnapshot;
+import tsp.headdb.implementation.head.SkullTextures;
 import tsp.nexuslib.inventory.Button;
-import tsp.nexuslib.inventory.PagedPane;
 import tsp.nexuslib.inventory.Pane;
 import tsp.nexuslib.localization.TranslatableLocalization;
 import tsp.nexuslib.util.StringUtils;
@@ -26,14 +27,18 @@ import tsp.nexuslib.util.Validate;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class Utils {
 
     private static final HeadDB instance = HeadDB.getInstance();
+    private static final Map<UUID, CompletableFuture<List<Head>>> searches = new ConcurrentHashMap<>();
 
     public static String toString(Collection<String> set) {
         String[] array = set.toArray(new String[0]);
@@ -98,80 +103,145 @@ public class Utils {
         }
     }
 
+    /**
+     * Create a paged menu over the entries. Items are only created for the page being shown.
+     *
+     * @param player The player the menu is for
+     * @param title The title of the menu
+     * @param entries The entries, referenced and not copied
+     * @param renderer Creates the item of an entry
+     * @param action Handles clicks on an entry
+     * @return The menu
+     * @param <T> Type of the entries
+     */
     @SuppressWarnings("SpellCheckingInspection")
-    public static PagedPane createPaged(Player player, String title) {
-        PagedPane main = new PagedPane(4, 6, title);
+    public static <T> LazyPagedPane<T> createPaged(Player player, String title, List<T> entries, Function<T, ItemStack> renderer, BiConsumer<T, InventoryClickEvent> action) {
+        LazyPagedPane<T> main = new LazyPagedPane<>(title, entries, renderer, action);
         HeadAPI.getHeadByTexture("eyJ0ZXh0dXJlcyI6eyJTS0lOIjp7InVybCI6Imh0dHA6Ly90ZXh0dXJlcy5taW5lY3JhZnQubmV0L3RleHR1cmUvODY1MmUyYjkzNmNhODAyNmJkMjg2NTFkN2M5ZjI4MTlkMmU5MjM2OTc3MzRkMThkZmRiMTM1NTBmOGZkYWQ1ZiJ9fX0=").ifPresent(head -> main.setBackItem(head.getDecoratedItem(player.getUniqueId())));
         HeadAPI.getHeadByTexture("eyJ0ZXh0dXJlcyI6eyJTS0lOIjp7InVybCI6Imh0dHA6Ly90ZXh0dXJlcy5taW5lY3JhZnQubmV0L3RleHR1cmUvY2Q5MWY1MTI2NmVkZGM2MjA3ZjEyYWU4ZDdhNDljNWRiMDQxNWFkYTA0ZGFiOTJiYjc2ODZhZmRiMTdmNGQ0ZSJ9fX0=").ifPresent(head -> main.setCurrentItem(head.getDecoratedItem(player.getUniqueId())));
         HeadAPI.getHeadByTexture("eyJ0ZXh0dXJlcyI6eyJTS0lOIjp7InVybCI6Imh0dHA6Ly90ZXh0dXJlcy5taW5lY3JhZnQubmV0L3RleHR1cmUvMmEzYjhmNjgxZGFhZDhiZjQzNmNhZThkYTNmZTgxMzFmNjJhMTYyYWI4MWFmNjM5YzNlMDY0NGFhNmFiYWMyZiJ9fX0=").ifPresent(head -> main.setNextItem(head.getDecoratedItem(player.getUniqueId())));
-        main.setControlCurrent(new Button(main.getCurrentItem(), e -> Bukkit.dispatchCommand(player, "hdb")));
+        main.setCurrentAction(e -> Bukkit.dispatchCommand(player, "hdb"));
         return main;
     }
 
-    public static void openFavoritesMenu(Player player) {
-        TranslatableLocalization localization = HeadDB.getInstance().getLocalization();
+    /**
+     * Create a paged menu of heads. Left click buys a head, right click adds it to the favorites.
+     *
+     * @param player The player the menu is for
+     * @param title The title of the menu
+     * @param category The category of the heads, used for permission checks
+     * @param heads The heads, referenced and not copied
+     * @return The menu
+     */
+    @ParametersAreNonnullByDefault
+    public static LazyPagedPane<Head> createHeadsPane(Player player, String title, @Nullable Category category, List<Head> heads) {
+        return createPaged(player, title, heads, head -> head.getDecoratedItem(player.getUniqueId()), (head, e) -> {
+            if (category != null && instance.getConfig().getBoolean("requireCategoryPermission") && !player.hasPermission("headdb.category." + category.getName())) {
+                instance.getLocalization().sendMessage(player.getUniqueId(), "noPermission");
+                return;
+            }
 
-        List<Head> heads = HeadAPI.getFavoriteHeads(player.getUniqueId());
-        PagedPane main = Utils.createPaged(player, Utils.translateTitle(localization.getMessage(player.getUniqueId(), "menu.main.favorites.name").orElse("Favorites"), heads.size(), "Favorites"));
-        for (Head head : heads) {
-            main.addButton(new Button(head.getDecoratedItem(player.getUniqueId()), fe -> {
-                if (!player.hasPermission("headdb.favorites")) {
-                    localization.sendMessage(player, "noAccessFavorites");
-                    return;
+            if (e.isLeftClick()) {
+                int amount = 1;
+                if (e.isShiftClick()) {
+                    amount = 64;
                 }
 
-                if (fe.isLeftClick()) {
-                    int amount = 1;
-                    if (fe.isShiftClick()) {
-                        amount = 64;
-                    }
-
-                    Utils.purchase(player, head, amount);
-                } else if (fe.isRightClick()) {
-
+                purchase(player, head, amount);
+            } else if (e.isRightClick()) {
+                if (player.hasPermission("headdb.favorites")) {
                     HeadDB.getInstance().getStorage().ifPresent(storage ->
-                            storage.getPlayerStorage().removeFavorite(player.getUniqueId(), head.getTexture()));
+                            storage.getPlayerStorage().addFavorite(player.getUniqueId(), head.getTexture()));
 
-                    localization.sendMessage(player, "removedFavorite", msg -> msg.replace("%name%", head.getName()));
-                    openFavoritesMenu(player);
+                    HeadDB.getInstance().getLocalization().sendMessage(player, "addedFavorite", msg -> msg.replace("%name%", head.getName()));
+                } else {
+                    HeadDB.getInstance().getLocalization().sendMessage(player, "noAccessFavorites");
                 }
-            }));
-        }
+            }
+        });
+    }
 
-        main.open(player);
+    /**
+     * Create a paged menu of a category. The pages are shared with every other player viewing them in the same language.
+     *
+     * @param player The player the menu is for
+     * @param title The title of the menu
+     * @param snapshot The generation of the database to show
+     * @param category The category
+     * @return The menu
+     */
+    @ParametersAreNonnullByDefault
+    public static LazyPagedPane<Head> createCategoryPane(Player player, String title, HeadSnapshot snapshot, Category category) {
+        LazyPagedPane<Head> main = createHeadsPane(player, title, category, snapshot.getHeads(category));
+        String format = instance.getLocalization().getMessage(player.getUniqueId(), "menu.head.name").orElse(null);
+        main.setPageSource(page -> HeadAPI.getDatabase().getPageCache().get(snapshot, category, format, page, LazyPagedPane.PAGE_SIZE));
+        return main;
     }
 
+    /**
+     * Search for heads off the main thread on behalf of a player.
+     * A newer search by the same player cancels this one, its results are then never delivered.
+     *
+     * @param player The player searching
+     * @param query The query
+     * @param results Receives the results on the main thread, if the player is still online
+     */
     @ParametersAreNonnullByDefault
-    public static void addHeads(Player player, @Nullable Category category, PagedPane pane, Collection<Head> heads) {
-        for (Head head : heads) {
-            ItemStack item = head.getDecoratedItem(player.getUniqueId());
-            pane.addButton(new Button(item, e -> {
-                e.setCancelled(true);
-
-                if (category != null && instance.getConfig().getBoolean("requireCategoryPermission") && !player.hasPermission("headdb.category." + category.getName())) {
-                    instance.getLocalization().sendMessage(player.getUniqueId(), "noPermission");
-                    return;
+    public static void search(Player player, String query, Consumer<List<Head>> results) {
+        UUID uniqueId = player.getUniqueId();
+        CompletableFuture<List<Head>> search = HeadAPI.searchHeadsAsync(query);
+        CompletableFuture<List<Head>> previous = searches.put(uniqueId, search);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+
+        search.whenComplete((heads, ex) -> {
+            if (!searches.remove(uniqueId, search)) {
+                return; // Replaced by a newer search
+            }
+
+            if (ex != null) {
+                instance.getLog().error("Failed to search for '" + query + "' for player: " + player.getName());
+                ex.printStackTrace();
+                return;
+            }
+
+            Bukkit.getScheduler().runTask(instance, () -> {
+                if (player.isOnline()) {
+                    results.accept(heads);
                 }
+            });
+        });
+    }
 
-                if (e.isLeftClick()) {
-                    int amount = 1;
-                    if (e.isShiftClick()) {
-                        amount = 64;
-                    }
+    public static void openFavoritesMenu(Player player) {
+        TranslatableLocalization localization = HeadDB.getInstance().getLocalization();
 
-                    purchase(player, head, amount);
-                } else if (e.isRightClick()) {
-                    if (player.hasPermission("headdb.favorites")) {
-                        HeadDB.getInstance().getStorage().ifPresent(storage ->
-                                storage.getPlayerStorage().addFavorite(player.getUniqueId(), head.getTexture()));
+        List<Head> heads = HeadAPI.getFavoriteHeads(player.getUniqueId());
+        LazyPagedPane<Head> main = Utils.createPaged(player, Utils.translateTitle(localization.getMessage(player.getUniqueId(), "menu.main.favorites.name").orElse("Favorites"), heads.size(), "Favorites"), heads, head -> head.getDecoratedItem(player.getUniqueId()), (head, fe) -> {
+            if (!player.hasPermission("headdb.favorites")) {
+                localization.sendMessage(player, "noAccessFavorites");
+                return;
+            }
 
-                        HeadDB.getInstance().getLocalization().sendMessage(player, "addedFavorite", msg -> msg.replace("%name%", head.getName()));
-                    } else {
-                        HeadDB.getInstance().getLocalization().sendMessage(player, "noAccessFavorites");
-                    }
+            if (fe.isLeftClick()) {
+                int amount = 1;
+                if (fe.isShiftClick()) {
+                    amount = 64;
                 }
-           }));
-        }
+
+                Utils.purchase(player, head, amount);
+            } else if (fe.isRightClick()) {
+
+                HeadDB.getInstance().getStorage().ifPresent(storage ->
+                        storage.getPlayerStorage().removeFavorite(player.getUniqueId(), head.getTexture()));
+
+                localization.sendMessage(player, "removedFavorite", msg -> msg.replace("%name%", head.getName()));
+                openFavoritesMenu(player);
+            }
+        });
+
+        main.open(player);
     }
 
     private static CompletableFuture<Boolean> processPayment(Player player, Head head, int amount) {
@@ -242,22 +312,7 @@ public class Utils {
             return Optional.empty();
         }
 
-        try {
-            Field profileField = meta.getClass().getDeclaredField("profile");
-            profileField.setAccessible(true);
-            GameProfile profile = (GameProfile) profileField.get(meta);
-            if (profile == null) {
-                return Optional.empty();
-            }
-
-            return profile.getProperties().get("textures").stream()
-                    .filter(p -> p.getName().equals("textures"))
-                    .findAny()
-                    .map(Property::getValue);
-        } catch (NoSuchFieldException | SecurityException | IllegalAccessException e ) {
-            e.printStackTrace();
-            return Optional.empty();
-        }
+        return SkullTextures.read(meta);
     }
 
     public static int resolveInt(String raw) {
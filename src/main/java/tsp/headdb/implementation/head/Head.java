@@ -1,18 +1,17 @@
 package tsp.headdb.implementation.head;
 
-import com.mojang.authlib.GameProfile;
-import com.mojang.authlib.properties.Property;
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import tsp.headdb.HeadDB;
+import tsp.headdb.core.api.HeadAPI;
 import tsp.headdb.implementation.category.Category;
 import tsp.nexuslib.builder.ItemBuilder;
 import tsp.nexuslib.localization.TranslatableLocalization;
 import tsp.nexuslib.util.Validate;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.lang.reflect.Field;
 import java.util.Locale;
 import java.util.UUID;
 
@@ -25,7 +24,6 @@ public class Head {
     private final String tags;
     private final String updated;
     private final Category category;
-    private ItemStack item;
 
     @ParametersAreNonnullByDefault
     public Head(int id, UUID uniqueId, String name, String texture, String tags, String updated, Category category) {
@@ -45,35 +43,52 @@ public class Head {
         this.category = category;
     }
 
+    /**
+     * Constructor for flyweights that override the getters of the remaining properties.
+     *
+     * @param id The head id
+     * @param category The category
+     * @see HeadColumns
+     */
+    Head(int id, Category category) {
+        this.id = id;
+        this.uniqueId = null;
+        this.name = null;
+        this.texture = null;
+        this.tags = null;
+        this.updated = null;
+        this.category = category;
+    }
+
     public ItemStack getItem() {
         ItemStack item = new ItemStack(Material.PLAYER_HEAD);
-        GameProfile profile = new GameProfile(uniqueId, name);
         ItemMeta meta = item.getItemMeta();
-        profile.getProperties().put("textures", new Property("textures", texture));
-        try {
-            //noinspection DataFlowIssue
-            Field profileField = meta.getClass().getDeclaredField("profile");
-            profileField.setAccessible(true);
-            profileField.set(meta, profile);
-        } catch (NoSuchFieldException | IllegalArgumentException | IllegalAccessException ex) {
-            //Log.error("Could not set skull owner for " + uuid.toString() + " | Stack Trace:");
-            ex.printStackTrace();
+        if (meta != null) {
+            SkullTextures.apply(meta, getUniqueId(), getName(), getTexture());
+            item.setItemMeta(meta);
         }
 
-        item.setItemMeta(meta);
-        return item.clone(); // Return clone that changes are not reflected
+        return item;
     }
 
+    /**
+     * Retrieve the item of this head, named and described in the language of the receiver.
+     * Items are built once per language and cached until the database updates.
+     *
+     * @param receiver The player the item is for
+     * @return The decorated item, safe to modify
+     */
     public ItemStack getDecoratedItem(UUID receiver) {
-        if (item == null) {
-            TranslatableLocalization localization = HeadDB.getInstance().getLocalization();
-            item = new ItemBuilder(getItem())
-                    .name(localization.getMessage(receiver, "menu.head.name").orElse("&e" + name.toUpperCase(Locale.ROOT)).replace("%name%", name))
-                    .setLore("&cID: " + id, "&7Tags: &e" + tags)
-                    .build();
-        }
+        TranslatableLocalization localization = HeadDB.getInstance().getLocalization();
+        return HeadAPI.getDatabase().getItemCache().get(this, localization.getMessage(receiver, "menu.head.name").orElse(null));
+    }
 
-        return item;
+    ItemStack buildDecoratedItem(@Nullable String format) {
+        String name = getName();
+        return new ItemBuilder(getItem())
+                .name((format != null ? format : "&e" + name.toUpperCase(Locale.ROOT)).replace("%name%", name))
+                .setLore("&cID: " + id, "&7Tags: &e" + getTags())
+                .build();
     }
 
     public int getId() {
@@ -0,0 +1,183 @@
+package tsp.headdb.implementation.head;
+
+import tsp.headdb.implementation.category.Category;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+/**
+ * Immutable columnar store of heads.
+ * Every property is kept in an array indexed by position and textures are encoded into one shared UTF-8 arena.
+ * Names and tags are kept as the same strings the search indexes hold, and the update date once per category.
+ * {@link Head} objects are only created when a position is accessed and are not retained, so the heap held by the
+ * database is a handful of arrays instead of one object graph per head.
+ */
+public final class HeadColumns {
+
+    private final int size;
+    private final int[] ids;
+    private final long[] mostBits;
+    private final long[] leastBits;
+    private final byte[] categories;
+    private final String[] names;
+    private final String[] tags;
+    private final String[] updated; // Per category, every head of a category comes from the same response
+    private final int[] offsets; // Start of every texture in the arena, the next offset is its end
+    private final byte[] arena;
+    private final List<Head> view;
+
+    private HeadColumns(int size, int[] ids, long[] mostBits, long[] leastBits, byte[] categories, String[] names, String[] tags, String[] updated, int[] offsets, byte[] arena) {
+        this.size = size;
+        this.ids = ids;
+        this.mostBits = mostBits;
+        this.leastBits = leastBits;
+        this.categories = categories;
+        this.names = names;
+        this.tags = tags;
+        this.updated = updated;
+        this.offsets = offsets;
+        this.arena = arena;
+        this.view = new View();
+    }
+
+    /**
+     * Encode the heads into columns.
+     * The update date of a category is taken from its first head.
+     *
+     * @param heads The heads, in the order they are stored
+     * @return The columns
+     */
+    public static HeadColumns build(List<Head> heads) {
+        int size = heads.size();
+        int[] ids = new int[size];
+        long[] mostBits = new long[size];
+        long[] leastBits = new long[size];
+        byte[] categories = new byte[size];
+        String[] names = new String[size];
+        String[] tags = new String[size];
+        String[] updated = new String[Category.VALUES.length];
+        int[] offsets = new int[size + 1];
+
+        byte[][] encoded = new byte[size][];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            Head head = heads.get(i);
+            ids[i] = head.getId();
+            mostBits[i] = head.getUniqueId().getMostSignificantBits();
+            leastBits[i] = head.getUniqueId().getLeastSignificantBits();
+            int category = head.getCategory().ordinal();
+            categories[i] = (byte) category;
+            names[i] = head.getName();
+            tags[i] = head.getTags();
+            if (updated[category] == null) {
+                updated[category] = head.getUpdated();
+            }
+
+            encoded[i] = head.getTexture().getBytes(StandardCharsets.UTF_8);
+            length += encoded[i].length;
+        }
+
+        byte[] arena = new byte[length];
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            offsets[i] = position;
+            System.arraycopy(encoded[i], 0, arena, position, encoded[i].length);
+            position += encoded[i].length;
+        }
+        offsets[size] = position;
+
+        return new HeadColumns(size, ids, mostBits, leastBits, categories, names, tags, updated, offsets, arena);
+    }
+
+    /**
+     * Retrieve a view of every head. Heads are created on access.
+     *
+     * @return Unmodifiable list of heads
+     */
+    public List<Head> getHeads() {
+        return view;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    private String texture(int position) {
+        return new String(arena, offsets[position], offsets[position + 1] - offsets[position], StandardCharsets.UTF_8);
+    }
+
+    private final class View extends AbstractList<Head> implements RandomAccess {
+
+        @Override
+        public Head get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+
+            return new Flyweight(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+    }
+
+    /**
+     * Head backed by a position of the columns. The texture is decoded on every access.
+     */
+    private final class Flyweight extends Head {
+
+        private final int position;
+
+        private Flyweight(int position) {
+            super(ids[position], Category.VALUES[categories[position]]);
+            this.position = position;
+        }
+
+        @Override
+        public UUID getUniqueId() {
+            return new UUID(mostBits[position], leastBits[position]);
+        }
+
+        @Override
+        public String getName() {
+            return names[position];
+        }
+
+        @Override
+        public String getTexture() {
+            return texture(position);
+        }
+
+        @Override
+        public String getTags() {
+            return tags[position];
+        }
+
+        @Override
+        public String getUpdated() {
+            return updated[categories[position]];
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Flyweight flyweight && flyweight.position == position && flyweight.columns() == columns();
+        }
+
+        @Override
+        public int hashCode() {
+            return position;
+        }
+
+        private HeadColumns columns() {
+            return HeadColumns.this;
+        }
+
+    }
+
+}
@@ -1,58 +1,406 @@
 package tsp.headdb.implementation.head;
 
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitScheduler;
+import tsp.headdb.HeadDB;
+import tsp.headdb.core.storage.HeadDBThreadFactory;
 import tsp.headdb.implementation.category.Category;
 import tsp.headdb.implementation.requester.HeadProvider;
 import tsp.headdb.implementation.requester.Requester;
+import tsp.nexuslib.localization.TranslatableLocalization;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 
 public class HeadDatabase {
 
+    private static final UUID CONSOLE = new UUID(0, 0);
+
     private final JavaPlugin plugin;
     private final BukkitScheduler scheduler;
     private final Requester requester;
-    private final ConcurrentHashMap<Category, List<Head>> heads;
-    private long timestamp;
+    private final ExecutorService fetchExecutor;
+    private final ExecutorService searchExecutor;
+    private final HeadSnapshotFile snapshotFile;
+    private final Object snapshotLock = new Object(); // Serializes snapshot writes, never held by the main thread
+    private final AtomicReference<HeadSnapshot> snapshot;
+    private final AtomicLong generation;
+    private final HeadItemCache itemCache;
+    private final HeadPageCache pageCache;
+    private volatile Map<Category, Long> timings;
+    private CompletableFuture<UpdateResult> updating; // Guarded by this, the update in flight
 
     public HeadDatabase(JavaPlugin plugin, HeadProvider provider) {
         this.plugin = plugin;
         this.scheduler = plugin.getServer().getScheduler();
         this.requester = new Requester(plugin, provider);
-        this.heads = new ConcurrentHashMap<>();
+        this.fetchExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(plugin.getConfig().getInt("database.threads", Category.VALUES.length), Category.VALUES.length)), HeadDBThreadFactory.FACTORY);
+        this.searchExecutor = Executors.newFixedThreadPool(Math.max(1, plugin.getConfig().getInt("search.threads", 2)), HeadDBThreadFactory.FACTORY);
+        this.snapshotFile = new HeadSnapshotFile(new File(plugin.getDataFolder(), "data/heads.snapshot"));
+        this.snapshot = new AtomicReference<>(HeadSnapshot.empty());
+        this.generation = new AtomicLong();
+        this.itemCache = new HeadItemCache(plugin.getConfig().getInt("database.itemCache", 20000));
+        this.pageCache = new HeadPageCache(itemCache, plugin.getConfig().getInt("database.pageCache", 500));
+        this.timings = Collections.emptyMap();
+    }
+
+    /**
+     * Retrieve the current generation of the database.
+     * The returned snapshot never changes, updates publish a new one instead.
+     *
+     * @return The current snapshot
+     */
+    public HeadSnapshot getSnapshot() {
+        return snapshot.get();
     }
 
     public Map<Category, List<Head>> getHeads() {
-        return heads;
+        return snapshot.get().getHeads();
+    }
+
+    /**
+     * Retrieve an immutable flattened view of every {@link Head} in the database, ordered by category.
+     * The view is built once per update and is not copied on access.
+     *
+     * @return Unmodifiable list of heads
+     */
+    public List<Head> getAllHeads() {
+        return snapshot.get().getAllHeads();
+    }
+
+    /**
+     * Retrieve the total amount of heads in the database.
+     *
+     * @return Amount of heads
+     */
+    public int getSize() {
+        return snapshot.get().getSize();
+    }
+
+    /**
+     * Retrieve a {@link Head} by its id.
+     *
+     * @param id The id to look for
+     * @return The {@link Head}, else empty
+     */
+    public Optional<Head> getHeadById(int id) {
+        return snapshot.get().getHeadById(id);
+    }
+
+    /**
+     * Retrieve a {@link Head} by its texture value.
+     *
+     * @param texture The texture to look for
+     * @return The {@link Head}, else empty
+     */
+    public Optional<Head> getHeadByTexture(String texture) {
+        return snapshot.get().getHeadByTexture(texture);
     }
 
     public void getHeadsNoCache(BiConsumer<Long, Map<Category, List<Head>>> heads) {
         getScheduler().runTaskAsynchronously(plugin, () -> {
             long start = System.currentTimeMillis();
-            Map<Category, List<Head>> result = new HashMap<>();
-            for (Category category : Category.VALUES) {
-                requester.fetchAndResolve(category, response -> result.put(category, response));
+            Map<Category, List<Head>> fetched = new ConcurrentHashMap<>();
+            Map<Category, Long> elapsed = new ConcurrentHashMap<>();
+
+            // Every category is fetched on its own, the whole refresh takes as long as the slowest one.
+            CompletableFuture<?>[] tasks = new CompletableFuture[Category.VALUES.length];
+            for (int i = 0; i < Category.VALUES.length; i++) {
+                Category category = Category.VALUES[i];
+                tasks[i] = CompletableFuture.runAsync(() -> {
+                    long categoryStart = System.currentTimeMillis();
+                    requester.fetchAndResolve(category, response -> fetched.put(category, response));
+                    elapsed.put(category, System.currentTimeMillis() - categoryStart);
+                }, fetchExecutor).exceptionally(ex -> {
+                    HeadDB.getInstance().getLog().error("Failed to fetch category: " + category.getName());
+                    ex.printStackTrace();
+                    return null;
+                });
             }
 
+            CompletableFuture.allOf(tasks).join();
+
+            Map<Category, List<Head>> result = new EnumMap<>(Category.class);
+            result.putAll(fetched);
+            Map<Category, Long> categoryTimings = new EnumMap<>(Category.class);
+            categoryTimings.putAll(elapsed);
+            this.timings = Collections.unmodifiableMap(categoryTimings);
             heads.accept(System.currentTimeMillis() - start, result);
         });
     }
 
+    /**
+     * Fetch every category and publish the result as a new generation.
+     * Only one update runs at a time, calling this while one is running waits for its result instead of starting another.
+     *
+     * @param fetched Receives the time taken and the fetched heads
+     */
     public void update(BiConsumer<Long, Map<Category, List<Head>>> fetched) {
+        CompletableFuture<UpdateResult> current;
+        boolean start;
+        synchronized (this) {
+            start = updating == null;
+            if (start) {
+                updating = new CompletableFuture<>();
+            }
+            current = updating;
+        }
+
+        current.thenAccept(result -> fetched.accept(result.elapsed(), result.heads()));
+        if (!start) {
+            HeadDB.getInstance().getLog().debug("An update is already running, waiting for it to finish.");
+            return;
+        }
+
         getHeadsNoCache((elapsed, result) -> {
-            heads.putAll(result);
-            timestamp = System.currentTimeMillis();
-            fetched.accept(elapsed, result);
+            try {
+                publish(result);
+            } finally {
+                synchronized (this) {
+                    updating = null;
+                }
+                current.complete(new UpdateResult(elapsed, result));
+            }
+        });
+    }
+
+    /**
+     * Publish fetched heads as a new generation and save it to disk.
+     * If every category failed the current generation is kept, only marked as stale.
+     *
+     * @param result The fetched heads, categories that failed are missing
+     */
+    private void publish(Map<Category, List<Head>> result) {
+        HeadSnapshot previous = snapshot.get();
+        if (result.isEmpty()) {
+            // Nothing changed, rebuilding every index for the same heads would only waste time
+            HeadDB.getInstance().getLog().warning("Failed to update every category, keeping " + previous.getSize() + " heads from the previous update.");
+            snapshot.compareAndSet(previous, previous.withStale(EnumSet.allOf(Category.class)));
+            return;
+        }
+
+        Map<Category, List<Head>> heads = new EnumMap<>(Category.class);
+        Set<Category> stale = EnumSet.noneOf(Category.class);
+        for (Category category : Category.VALUES) {
+            List<Head> list = result.get(category);
+            if (list != null) {
+                heads.put(category, list);
+            } else {
+                // Keep serving the previous data for categories that failed, but do not hide it.
+                HeadDB.getInstance().getLog().warning("Failed to update category '" + category.getName() + "', keeping " + previous.getHeads(category).size() + " heads from the previous update.");
+                heads.put(category, previous.getHeads(category));
+                stale.add(category);
+            }
+        }
+
+        commit(new HeadSnapshot(generation.incrementAndGet(), System.currentTimeMillis(), heads, stale, isColumnar()));
+        saveSnapshot();
+    }
+
+    /**
+     * Publish a new generation. Readers switch over atomically.
+     *
+     * @param next The new snapshot
+     */
+    private void commit(HeadSnapshot next) {
+        snapshot.set(next);
+        if (next.isColumnar()) {
+            // The requester would otherwise keep the fetched objects alive until the next update
+            next.getHeads().forEach(requester::retain);
+        }
+        itemCache.invalidate(next.getGeneration());
+        pageCache.invalidate(next.getGeneration());
+        prewarm(next);
+    }
+
+    /**
+     * Build the decorated items of a generation in the background, so the first menus opened after an update do not have to.
+     * Items are built on a single thread for the languages of the online players, one head of every category at a time,
+     * until the configured amount or time limit is reached or a newer generation is published.
+     *
+     * @param target The generation to prewarm
+     */
+    private void prewarm(HeadSnapshot target) {
+        if (plugin.getConfig().getBoolean("only-api") || !plugin.getConfig().getBoolean("database.prewarm.enabled", true) || itemCache.getCapacity() == 0 || target.getSize() == 0) {
+            return;
+        }
+
+        int limit = plugin.getConfig().getInt("database.prewarm.limit", 0);
+        long time = plugin.getConfig().getLong("database.prewarm.time", 10000);
+        // Collect the name formats on the main thread, the players may not be accessed asynchronously.
+        scheduler.runTask(plugin, () -> {
+            TranslatableLocalization localization = HeadDB.getInstance().getLocalization();
+            Set<String> formats = new HashSet<>();
+            formats.add(localization.getMessage(CONSOLE, "menu.head.name").orElse(null));
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                formats.add(localization.getMessage(player.getUniqueId(), "menu.head.name").orElse(null));
+            }
+
+            scheduler.runTaskAsynchronously(plugin, () -> {
+                long start = System.currentTimeMillis();
+                int perCategory = limit > 0 ? limit : Integer.MAX_VALUE;
+                int max = itemCache.getCapacity() / formats.size();
+                int built = 0;
+
+                outer:
+                for (int i = 0; i < perCategory; i++) {
+                    boolean remaining = false;
+                    for (Category category : Category.VALUES) {
+                        List<Head> heads = target.getHeads(category);
+                        if (i >= heads.size()) {
+                            continue;
+                        }
+
+                        if (built >= max || snapshot.get() != target || (time > 0 && System.currentTimeMillis() - start > time)) {
+                            break outer;
+                        }
+
+                        for (String format : formats) {
+                            itemCache.warm(heads.get(i), format);
+                        }
+                        built++;
+                        remaining = true;
+                    }
+
+                    if (!remaining) {
+                        break;
+                    }
+                }
+
+                HeadDB.getInstance().getLog().debug("Prewarmed " + built + " heads for " + formats.size() + " language(s) in " + (System.currentTimeMillis() - start) + "ms.");
+            });
         });
     }
 
+    /**
+     * Load the heads from the snapshot on disk.
+     * This is done synchronously and does not touch the network.
+     *
+     * @return Amount of heads loaded
+     */
+    public int loadSnapshot() {
+        if (!plugin.getConfig().getBoolean("database.snapshot", true)) {
+            return 0;
+        }
+
+        try {
+            Optional<HeadSnapshotFile.Data> data = snapshotFile.read();
+            if (data.isEmpty()) {
+                return 0;
+            }
+
+            // Heads blocked since the snapshot was written are dropped right away
+            Set<Integer> blocked = requester.getBlockedIds();
+            Map<Category, List<Head>> heads = new EnumMap<>(Category.class);
+            data.get().heads().forEach((category, list) -> heads.put(category, requester.filterBlocked(list, blocked)));
+            data.get().validators().forEach((category, validators) -> {
+                List<Head> list = heads.get(category);
+                if (list != null) {
+                    requester.seed(category, validators, list);
+                }
+            });
+
+            HeadSnapshot loaded = new HeadSnapshot(generation.incrementAndGet(), data.get().timestamp(), heads, Collections.emptySet(), isColumnar());
+            commit(loaded);
+            return loaded.getSize();
+        } catch (IOException | IllegalArgumentException ex) {
+            HeadDB.getInstance().getLog().error("Failed to load database snapshot: " + ex.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Whether new snapshots encode the heads into {@link HeadColumns}, trading a little access time for far less heap.
+     *
+     * @return If the columnar store is enabled
+     */
+    private boolean isColumnar() {
+        return plugin.getConfig().getBoolean("database.columnar", false);
+    }
+
+    /**
+     * Write the current heads to the snapshot on disk.
+     */
+    public void saveSnapshot() {
+        if (!plugin.getConfig().getBoolean("database.snapshot", true)) {
+            return;
+        }
+
+        synchronized (snapshotLock) {
+            // Read inside the lock, so the last write is always of the newest generation
+            HeadSnapshot current = snapshot.get();
+            try {
+                snapshotFile.write(current.getTimestamp(), current.getHeads(), requester.getValidators());
+            } catch (IOException ex) {
+                HeadDB.getInstance().getLog().error("Failed to save database snapshot: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Shuts down the executors used for fetching categories and searching.
+     */
+    public void shutdown() {
+        fetchExecutor.shutdownNow();
+        searchExecutor.shutdownNow();
+    }
+
     public long getTimestamp() {
-        return timestamp;
+        return snapshot.get().getTimestamp();
+    }
+
+    /**
+     * Retrieve how long each category took to fetch during the last refresh.
+     *
+     * @return Time in milliseconds per category
+     */
+    public Map<Category, Long> getTimings() {
+        return timings;
+    }
+
+    /**
+     * Retrieve the cache of decorated head items.
+     *
+     * @return The item cache
+     */
+    public HeadItemCache getItemCache() {
+        return itemCache;
+    }
+
+    /**
+     * Retrieve the cache of rendered category pages, shared between viewers.
+     *
+     * @return The page cache
+     */
+    public HeadPageCache getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * Retrieve the executor searches are run on, so they never block the main thread.
+     *
+     * @return The search executor
+     */
+    public ExecutorService getSearchExecutor() {
+        return searchExecutor;
     }
 
     public JavaPlugin getPlugin() {
@@ -67,4 +415,6 @@ public class HeadDatabase {
         return requester;
     }
 
-}
\ No newline at end of file
+    private record UpdateResult(long elapsed, Map<Category, List<Head>> heads) {}
+
+}
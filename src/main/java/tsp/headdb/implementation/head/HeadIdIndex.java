@@ -0,0 +1,79 @@
+package tsp.headdb.implementation.head;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable open addressing map from head ids to their position in the database.
+ * Keys and values are kept in primitive arrays, lookups neither box nor allocate.
+ */
+public final class HeadIdIndex {
+
+    private static final int EMPTY = -1;
+
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+
+    private HeadIdIndex(int[] keys, int[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+    }
+
+    /**
+     * Build an index over the heads, keyed by id.
+     * If several heads share an id, the first one wins.
+     *
+     * @param heads The heads, the index of each head in the list is stored as the value
+     * @return The index
+     */
+    public static HeadIdIndex build(List<Head> heads) {
+        int capacity = Integer.highestOneBit(Math.max(2, heads.size()) * 2 - 1) << 1; // Load factor <= 0.5
+        int[] keys = new int[capacity];
+        int[] values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+
+        int mask = capacity - 1;
+        for (int i = 0; i < heads.size(); i++) {
+            int id = heads.get(i).getId();
+            int slot = mix(id) & mask;
+            while (values[slot] != EMPTY && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (values[slot] == EMPTY) {
+                keys[slot] = id;
+                values[slot] = i;
+            }
+        }
+
+        return new HeadIdIndex(keys, values);
+    }
+
+    /**
+     * Retrieve the position of the head with the id.
+     *
+     * @param id The head id
+     * @return The position, or {@code -1} if there is no such head
+     */
+    public int indexOf(int id) {
+        int slot = mix(id) & mask;
+        int value;
+        while ((value = values[slot]) != EMPTY) {
+            if (keys[slot] == id) {
+                return value;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return EMPTY;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
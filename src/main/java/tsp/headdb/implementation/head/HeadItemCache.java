@@ -0,0 +1,100 @@
+package tsp.headdb.implementation.head;
+
+import org.bukkit.inventory.ItemStack;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of decorated head items, keyed by head id and localized name format.
+ */
+public final class HeadItemCache {
+
+    private final int capacity;
+    private final Map<Key, ItemStack> items;
+    private volatile long generation;
+
+    public HeadItemCache(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.items = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ItemStack> eldest) {
+                return size() > HeadItemCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Retrieve the decorated item of a head, building it on the first request.
+     *
+     * @param head The head
+     * @param format The localized name format, or null for the default one
+     * @return A copy of the cached item, safe to modify
+     */
+    public ItemStack get(Head head, @Nullable String format) {
+        if (capacity == 0) {
+            return head.buildDecoratedItem(format);
+        }
+
+        return lookup(head, format).clone();
+    }
+
+    /**
+     * Build and cache the decorated item of a head ahead of time.
+     *
+     * @param head The head
+     * @param format The localized name format, or null for the default one
+     */
+    public void warm(Head head, @Nullable String format) {
+        if (capacity > 0) {
+            lookup(head, format);
+        }
+    }
+
+    private ItemStack lookup(Head head, @Nullable String format) {
+        Key key = new Key(head.getId(), format != null ? format : "");
+        ItemStack item;
+        synchronized (items) {
+            item = items.get(key);
+        }
+
+        if (item == null) {
+            long expected = generation;
+            item = head.buildDecoratedItem(format);
+            synchronized (items) {
+                // Do not cache items built from heads of a generation that was replaced meanwhile
+                if (generation == expected) {
+                    items.put(key, item);
+                }
+            }
+        }
+
+        return item;
+    }
+
+    /**
+     * Drop every cached item, called when a new generation of the database is published.
+     *
+     * @param generation The new generation
+     */
+    public void invalidate(long generation) {
+        synchronized (items) {
+            this.generation = generation;
+            items.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (items) {
+            return items.size();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private record Key(int id, String format) {}
+
+}
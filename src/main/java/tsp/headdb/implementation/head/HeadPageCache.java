@@ -0,0 +1,94 @@
+package tsp.headdb.implementation.head;
+
+import org.bukkit.inventory.ItemStack;
+import tsp.headdb.implementation.category.Category;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of rendered category pages, keyed by category, localized name format and page.
+ */
+public final class HeadPageCache {
+
+    private final HeadItemCache itemCache;
+    private final int capacity;
+    private final Map<Key, ItemStack[]> pages;
+    private volatile long generation;
+
+    public HeadPageCache(HeadItemCache itemCache, int capacity) {
+        this.itemCache = itemCache;
+        this.capacity = Math.max(0, capacity);
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ItemStack[]> eldest) {
+                return size() > HeadPageCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Retrieve the items of a category page, rendering it on the first request.
+     *
+     * @param snapshot The generation the page is rendered from
+     * @param category The category
+     * @param format The localized name format, or null for the default one
+     * @param page The page, starting from 0
+     * @param pageSize Amount of heads per page
+     * @return The shared items of the page, must not be modified
+     */
+    public ItemStack[] get(HeadSnapshot snapshot, Category category, @Nullable String format, int page, int pageSize) {
+        // Pages of an outdated snapshot are still rendered for the viewers holding it, but never cached.
+        boolean current = snapshot.getGeneration() == generation && capacity > 0;
+        Key key = new Key(category, format != null ? format : "", page, pageSize);
+        if (current) {
+            synchronized (pages) {
+                ItemStack[] items = pages.get(key);
+                if (items != null) {
+                    return items;
+                }
+            }
+        }
+
+        List<Head> heads = snapshot.getHeads(category);
+        int start = Math.min(page * pageSize, heads.size());
+        int end = Math.min(start + pageSize, heads.size());
+        ItemStack[] items = new ItemStack[end - start];
+        for (int i = start; i < end; i++) {
+            items[i - start] = itemCache.get(heads.get(i), format);
+        }
+
+        if (current) {
+            synchronized (pages) {
+                if (snapshot.getGeneration() == generation) {
+                    pages.put(key, items);
+                }
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * Drop every cached page, called when a new generation of the database is published.
+     *
+     * @param generation The new generation
+     */
+    public void invalidate(long generation) {
+        synchronized (pages) {
+            this.generation = generation;
+            pages.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (pages) {
+            return pages.size();
+        }
+    }
+
+    private record Key(Category category, String format, int page, int pageSize) {}
+
+}
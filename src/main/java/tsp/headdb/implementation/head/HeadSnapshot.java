@@ -0,0 +1,281 @@
+package tsp.headdb.implementation.head;
+
+import tsp.headdb.implementation.category.Category;
+import tsp.headdb.implementation.search.CompletionIndex;
+import tsp.headdb.implementation.search.NGramIndex;
+import tsp.headdb.implementation.search.SearchEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Immutable generation of the {@link HeadDatabase}.
+ * Holds the heads together with every index built over them, so readers always see one consistent state.
+ */
+public final class HeadSnapshot {
+
+    private final long generation;
+    private final long timestamp;
+    private final Map<Category, List<Head>> heads;
+    private final Set<Category> stale;
+    private final List<Head> all;
+    private final HeadColumns columns; // Null unless the heads are stored in columns
+    private final HeadIdIndex ids;
+    private final HeadTextureIndex textures;
+    private final NGramIndex names;
+    private final NGramIndex tags;
+    private final SearchEngine engine;
+    private final CompletionIndex completions;
+
+    /**
+     * Build a snapshot over the heads. The indexes are built immediately.
+     *
+     * @param generation The generation number, increasing with every update
+     * @param timestamp The time the heads were fetched at
+     * @param heads The heads per category
+     * @param stale Categories that failed to update and carry data from the previous generation
+     */
+    public HeadSnapshot(long generation, long timestamp, Map<Category, List<Head>> heads, Set<Category> stale) {
+        this(generation, timestamp, heads, stale, false);
+    }
+
+    /**
+     * Build a snapshot over the heads. The indexes are built immediately.
+     *
+     * @param generation The generation number, increasing with every update
+     * @param timestamp The time the heads were fetched at
+     * @param heads The heads per category
+     * @param stale Categories that failed to update and carry data from the previous generation
+     * @param columnar Whether to encode the heads into {@link HeadColumns} instead of keeping the objects
+     */
+    public HeadSnapshot(long generation, long timestamp, Map<Category, List<Head>> heads, Set<Category> stale, boolean columnar) {
+        this.generation = generation;
+        this.timestamp = timestamp;
+
+        List<Head> flattened = new ArrayList<>();
+        int[] starts = new int[Category.VALUES.length + 1];
+        for (Category category : Category.VALUES) {
+            starts[category.ordinal()] = flattened.size();
+            List<Head> list = heads.get(category);
+            if (list != null) {
+                flattened.addAll(list);
+            }
+        }
+        starts[Category.VALUES.length] = flattened.size();
+
+        Map<Category, List<Head>> copy = new EnumMap<>(Category.class);
+        if (columnar) {
+            this.columns = HeadColumns.build(flattened);
+            this.all = columns.getHeads();
+        } else {
+            this.columns = null;
+            this.all = Collections.unmodifiableList(Arrays.asList(flattened.toArray(new Head[0])));
+        }
+        for (Category category : Category.VALUES) {
+            if (heads.containsKey(category)) {
+                copy.put(category, all.subList(starts[category.ordinal()], starts[category.ordinal() + 1]));
+            }
+        }
+
+        this.heads = Collections.unmodifiableMap(copy);
+        this.stale = Collections.unmodifiableSet(stale.isEmpty() ? EnumSet.noneOf(Category.class) : EnumSet.copyOf(stale));
+        this.ids = HeadIdIndex.build(all);
+        this.textures = HeadTextureIndex.build(all);
+
+        String[] nameValues = new String[all.size()];
+        String[] tagValues = new String[all.size()];
+        for (int i = 0; i < all.size(); i++) {
+            Head head = all.get(i);
+            nameValues[i] = head.getName();
+            tagValues[i] = head.getTags();
+        }
+        this.names = NGramIndex.build(nameValues);
+        this.tags = NGramIndex.build(tagValues);
+        this.engine = new SearchEngine(names, this.tags);
+
+        List<String> completionValues = new ArrayList<>(all.size() * 2);
+        List<String> completionKeys = new ArrayList<>(all.size() * 2);
+        for (int i = 0; i < all.size(); i++) {
+            String name = nameValues[i];
+            String key = name.toLowerCase(Locale.ROOT);
+            String normalized = names.get(i);
+            completionValues.add(name);
+            completionKeys.add(key.equals(normalized) ? normalized : key); // Share the string of the name index
+            String id = String.valueOf(all.get(i).getId());
+            completionValues.add(id);
+            completionKeys.add(id);
+        }
+        this.completions = CompletionIndex.build(completionValues, completionKeys);
+    }
+
+    private HeadSnapshot(HeadSnapshot source, Set<Category> stale) {
+        this.generation = source.generation;
+        this.timestamp = source.timestamp;
+        this.heads = source.heads;
+        this.stale = Collections.unmodifiableSet(stale.isEmpty() ? EnumSet.noneOf(Category.class) : EnumSet.copyOf(stale));
+        this.all = source.all;
+        this.columns = source.columns;
+        this.ids = source.ids;
+        this.textures = source.textures;
+        this.names = source.names;
+        this.tags = source.tags;
+        this.engine = source.engine;
+        this.completions = source.completions;
+    }
+
+    /**
+     * Create an empty snapshot.
+     *
+     * @return The snapshot
+     */
+    public static HeadSnapshot empty() {
+        return new HeadSnapshot(0, 0, Collections.emptyMap(), Collections.emptySet());
+    }
+
+    /**
+     * Create a copy of this snapshot with other categories marked as stale.
+     * The heads and indexes are shared and the generation stays the same, so nothing is rebuilt.
+     *
+     * @param stale The stale categories
+     * @return The copy
+     */
+    public HeadSnapshot withStale(Set<Category> stale) {
+        return new HeadSnapshot(this, stale);
+    }
+
+    public Optional<Head> getHeadById(int id) {
+        int position = ids.indexOf(id);
+        return position != -1 ? Optional.of(all.get(position)) : Optional.empty();
+    }
+
+    public Optional<Head> getHeadByTexture(String texture) {
+        int position = textures.indexOf(texture, all);
+        return position != -1 ? Optional.of(all.get(position)) : Optional.empty();
+    }
+
+    /**
+     * Retrieve a head by the hash of its texture, as stored for favorites.
+     *
+     * @param hash The {@link HeadTextureIndex#hash(String) hash} of the texture
+     * @return The head, else empty
+     */
+    public Optional<Head> getHeadByTextureHash(long hash) {
+        int position = textures.indexOf(hash);
+        return position != -1 ? Optional.of(all.get(position)) : Optional.empty();
+    }
+
+    /**
+     * Find every head whose name contains the query, ignoring case and colors.
+     *
+     * @param query The query
+     * @return Matching heads in database order
+     */
+    public List<Head> searchByName(String query) {
+        return resolve(names.search(query));
+    }
+
+    /**
+     * Find every head whose tags contain the query, ignoring case and colors.
+     *
+     * @param query The query
+     * @return Matching heads in database order
+     */
+    public List<Head> searchByTags(String query) {
+        return resolve(tags.search(query));
+    }
+
+    /**
+     * Search for the best matching heads, tolerating typos and ranking the results by relevance.
+     *
+     * @param query The query
+     * @param limit Maximum amount of results
+     * @return Matching heads, best match first
+     */
+    public List<Head> search(String query, int limit) {
+        return resolve(engine.search(query, limit));
+    }
+
+    /**
+     * Retrieve head names and ids starting with the prefix, for tab completion.
+     *
+     * @param prefix The prefix typed so far
+     * @param limit Maximum amount of completions
+     * @return Matching names and ids
+     */
+    public List<String> complete(String prefix, int limit) {
+        return completions.complete(prefix, limit);
+    }
+
+    public NGramIndex getNameIndex() {
+        return names;
+    }
+
+    public NGramIndex getTagIndex() {
+        return tags;
+    }
+
+    /**
+     * Retrieve the head at a position of the flattened database.
+     *
+     * @param position The position
+     * @return The head
+     */
+    public Head get(int position) {
+        return all.get(position);
+    }
+
+    private List<Head> resolve(int[] positions) {
+        List<Head> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            result.add(all.get(position));
+        }
+
+        return result;
+    }
+
+    public List<Head> getHeads(Category category) {
+        return heads.getOrDefault(category, Collections.emptyList());
+    }
+
+    public Map<Category, List<Head>> getHeads() {
+        return heads;
+    }
+
+    public List<Head> getAllHeads() {
+        return all;
+    }
+
+    public int getSize() {
+        return all.size();
+    }
+
+    /**
+     * Check whether the heads are stored in {@link HeadColumns} instead of being kept as objects.
+     *
+     * @return If the heads are stored in columns
+     */
+    public boolean isColumnar() {
+        return columns != null;
+    }
+
+    public Set<Category> getStaleCategories() {
+        return stale;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+}
@@ -0,0 +1,170 @@
+package tsp.headdb.implementation.head;
+
+import tsp.headdb.implementation.category.Category;
+import tsp.headdb.implementation.requester.HeadProvider;
+import tsp.headdb.implementation.requester.Validators;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Versioned binary snapshot of the {@link HeadDatabase} kept on disk,
+ * so the database is usable on startup before any network traffic happens.
+ */
+public class HeadSnapshotFile {
+
+    private static final int MAGIC = 0x48444253; // HDBS
+    private static final int VERSION = 2;
+
+    private final File file;
+
+    public HeadSnapshotFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the snapshot from disk.
+     *
+     * @return The snapshot, else empty if it does not exist or was written by an incompatible version
+     * @throws IOException If the file could not be read
+     */
+    public Optional<Data> read() throws IOException {
+        if (!file.exists()) {
+            return Optional.empty();
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                return Optional.empty();
+            }
+
+            if (in.readInt() != VERSION) {
+                return Optional.empty();
+            }
+
+            long timestamp = in.readLong();
+            int categories = in.readInt();
+            Map<Category, List<Head>> heads = new EnumMap<>(Category.class);
+            Map<Category, Validators> validators = new EnumMap<>(Category.class);
+            for (int i = 0; i < categories; i++) {
+                String name = in.readUTF();
+                Category category = Category.getByName(name).orElse(null);
+                if (in.readBoolean()) {
+                    String provider = in.readUTF();
+                    Validators entry = new Validators(HeadProvider.valueOf(provider), readNullable(in), readNullable(in), readNullable(in));
+                    if (category != null) {
+                        validators.put(category, entry);
+                    }
+                }
+
+                int size = in.readInt();
+                List<Head> list = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    int id = in.readInt();
+                    UUID uniqueId = new UUID(in.readLong(), in.readLong());
+                    String headName = in.readUTF();
+                    String texture = in.readUTF();
+                    String tags = in.readUTF();
+                    String updated = in.readUTF();
+                    if (category != null) {
+                        list.add(new Head(id, uniqueId, headName, texture, tags, updated, category));
+                    }
+                }
+
+                if (category != null) {
+                    heads.put(category, list);
+                }
+            }
+
+            return Optional.of(new Data(timestamp, heads, validators));
+        }
+    }
+
+    /**
+     * Write the heads to disk, replacing the previous snapshot atomically.
+     *
+     * @param timestamp The time the heads were fetched at
+     * @param heads The heads to write
+     * @param validators The validators the heads were fetched with
+     * @throws IOException If the file could not be written
+     */
+    public void write(long timestamp, Map<Category, List<Head>> heads, Map<Category, Validators> validators) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent.getPath());
+        }
+
+        // A unique temporary file, so a failed or concurrent write never replaces the snapshot with a partial one
+        Path temp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            writeTo(temp, timestamp, heads, validators);
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeTo(Path temp, long timestamp, Map<Category, List<Head>> heads, Map<Category, Validators> validators) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(timestamp);
+            out.writeInt(heads.size());
+            for (Map.Entry<Category, List<Head>> entry : heads.entrySet()) {
+                out.writeUTF(entry.getKey().getName());
+                Validators validator = validators.get(entry.getKey());
+                out.writeBoolean(validator != null);
+                if (validator != null) {
+                    out.writeUTF(validator.provider().name());
+                    writeNullable(out, validator.etag());
+                    writeNullable(out, validator.lastModified());
+                    writeNullable(out, validator.date());
+                }
+
+                out.writeInt(entry.getValue().size());
+                for (Head head : entry.getValue()) {
+                    out.writeInt(head.getId());
+                    out.writeLong(head.getUniqueId().getMostSignificantBits());
+                    out.writeLong(head.getUniqueId().getLeastSignificantBits());
+                    out.writeUTF(head.getName());
+                    out.writeUTF(head.getTexture());
+                    out.writeUTF(head.getTags());
+                    out.writeUTF(head.getUpdated());
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public record Data(long timestamp, Map<Category, List<Head>> heads, Map<Category, Validators> validators) {}
+
+}
@@ -0,0 +1,121 @@
+package tsp.headdb.implementation.head;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable open addressing map from head textures to their position in the database.
+ * Textures are keyed by a 64-bit hash, the texture itself is compared only when the hashes match.
+ */
+public final class HeadTextureIndex {
+
+    private static final int EMPTY = -1;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+
+    private HeadTextureIndex(long[] keys, int[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+    }
+
+    /**
+     * Build an index over the heads, keyed by texture.
+     * If several heads share a texture, the first one wins.
+     *
+     * @param heads The heads, the index of each head in the list is stored as the value
+     * @return The index
+     */
+    public static HeadTextureIndex build(List<Head> heads) {
+        int capacity = Integer.highestOneBit(Math.max(2, heads.size()) * 2 - 1) << 1; // Load factor <= 0.5
+        long[] keys = new long[capacity];
+        int[] values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+
+        int mask = capacity - 1;
+        outer:
+        for (int i = 0; i < heads.size(); i++) {
+            String texture = heads.get(i).getTexture();
+            long hash = hash(texture);
+            int slot = (int) hash & mask;
+            while (values[slot] != EMPTY) {
+                if (keys[slot] == hash && heads.get(values[slot]).getTexture().equals(texture)) {
+                    continue outer;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot] = hash;
+            values[slot] = i;
+        }
+
+        return new HeadTextureIndex(keys, values);
+    }
+
+    /**
+     * Retrieve the position of the head with the texture.
+     *
+     * @param texture The texture
+     * @param heads The heads this index was built from
+     * @return The position, or {@code -1} if there is no such head
+     */
+    public int indexOf(String texture, List<Head> heads) {
+        long hash = hash(texture);
+        int slot = (int) hash & mask;
+        int value;
+        while ((value = values[slot]) != EMPTY) {
+            if (keys[slot] == hash && heads.get(value).getTexture().equals(texture)) {
+                return value;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return EMPTY;
+    }
+
+    /**
+     * Retrieve the position of the head whose texture has the hash.
+     * The texture itself is not compared, a 64-bit hash is treated as unique.
+     *
+     * @param hash The {@link #hash(String) hash} of the texture
+     * @return The position, or {@code -1} if there is no such head
+     */
+    public int indexOf(long hash) {
+        int slot = (int) hash & mask;
+        int value;
+        while ((value = values[slot]) != EMPTY) {
+            if (keys[slot] == hash) {
+                return value;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return EMPTY;
+    }
+
+    /**
+     * Compute a 64-bit hash of a texture.
+     *
+     * @param texture The texture
+     * @return The hash
+     */
+    public static long hash(String texture) {
+        // FNV-1a followed by a final avalanche so the low bits are usable as a slot
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < texture.length(); i++) {
+            hash ^= texture.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
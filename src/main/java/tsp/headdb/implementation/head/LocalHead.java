@@ -5,6 +5,7 @@ import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.SkullMeta;
+import org.bukkit.profile.PlayerProfile;
 
 import java.util.Collections;
 import java.util.UUID;
@@ -16,7 +17,7 @@ public record LocalHead(UUID uniqueId, String name) {
         SkullMeta meta = (SkullMeta) item.getItemMeta();
         if(meta == null) return item;
 
-        meta.setOwningPlayer(Bukkit.getOfflinePlayer(uniqueId));
+        meta.setOwnerProfile(createProfile());
         item.setItemMeta(meta);
 
         return item.clone();
@@ -26,7 +27,7 @@ public record LocalHead(UUID uniqueId, String name) {
         ItemStack item = new ItemStack(Material.PLAYER_HEAD);
         SkullMeta meta = (SkullMeta) item.getItemMeta();
         if (meta != null) {
-            meta.setOwningPlayer(Bukkit.getOfflinePlayer(uniqueId));
+            meta.setOwnerProfile(createProfile());
             meta.setDisplayName(ChatColor.GOLD + name);
             //noinspection UnnecessaryToStringCall
             meta.setLore(Collections.singletonList(ChatColor.GRAY + "UUID: " + uniqueId.toString()));
@@ -36,4 +37,13 @@ public record LocalHead(UUID uniqueId, String name) {
         return item.clone();
     }
 
+    /**
+     * Create the profile of this head without looking up the offline player.
+     *
+     * @return The profile
+     */
+    private PlayerProfile createProfile() {
+        return Bukkit.createPlayerProfile(uniqueId, name.isBlank() || name.length() > 16 ? null : name);
+    }
+
 }
\ No newline at end of file
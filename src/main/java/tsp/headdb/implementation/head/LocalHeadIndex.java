@@ -0,0 +1,113 @@
+package tsp.headdb.implementation.head;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+import tsp.headdb.HeadDB;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Index of the heads of every player that has joined the server.
+ * It is seeded once from the offline players in the background and kept up to date by join events,
+ * so reading it never depends on the amount of players that have ever joined.
+ */
+public class LocalHeadIndex implements Listener {
+
+    private final Map<UUID, Integer> positions = new HashMap<>(); // Guarded by this
+    private volatile LocalHead[] heads = new LocalHead[64];
+    private volatile int size;
+
+    /**
+     * Register the join listener and seed the index from the offline players asynchronously.
+     *
+     * @param plugin The plugin
+     */
+    public void init(JavaPlugin plugin) {
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            long start = System.currentTimeMillis();
+            for (OfflinePlayer player : Bukkit.getOfflinePlayers()) {
+                if (player.getName() != null) {
+                    add(new LocalHead(player.getUniqueId(), player.getName()), false);
+                }
+            }
+
+            HeadDB.getInstance().getLog().debug("Indexed " + size + " local heads in " + (System.currentTimeMillis() - start) + "ms.");
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        add(new LocalHead(player.getUniqueId(), player.getName()), true);
+    }
+
+    /**
+     * Add a head to the index.
+     *
+     * @param head The head
+     * @param replace If an existing head of the same player should be replaced, for example after a name change
+     */
+    private synchronized void add(LocalHead head, boolean replace) {
+        Integer position = positions.get(head.uniqueId());
+        if (position != null) {
+            if (replace && !heads[position].name().equals(head.name())) {
+                heads[position] = head;
+            }
+            return;
+        }
+
+        LocalHead[] current = heads;
+        if (size == current.length) {
+            // Readers keep using the old array, it is never modified beyond their size
+            current = Arrays.copyOf(current, current.length * 2);
+            heads = current;
+        }
+
+        current[size] = head;
+        positions.put(head.uniqueId(), size);
+        size++;
+    }
+
+    /**
+     * Retrieve an unmodifiable view of the indexed heads in the order they were added.
+     * The view does not change size, heads added afterwards are only visible in a new view.
+     *
+     * @return The heads
+     */
+    public List<LocalHead> getHeads() {
+        LocalHead[] array = heads;
+        int length = Math.min(size, array.length);
+        return new AbstractList<>() {
+            @Override
+            public LocalHead get(int index) {
+                if (index < 0 || index >= length) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+
+                return array[index];
+            }
+
+            @Override
+            public int size() {
+                return length;
+            }
+        };
+    }
+
+    public int size() {
+        return size;
+    }
+
+}
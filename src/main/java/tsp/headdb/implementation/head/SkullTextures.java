@@ -0,0 +1,161 @@
+package tsp.headdb.implementation.head;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.properties.Property;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.inventory.meta.SkullMeta;
+import org.bukkit.profile.PlayerProfile;
+import org.bukkit.profile.PlayerTextures;
+import tsp.headdb.HeadDB;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Applies and reads skull textures.
+ * The skull meta internals are looked up once when this class is first used, every call afterwards goes through a cached {@link MethodHandle}.
+ * If the internals can not be found, the {@link PlayerProfile} API is used instead.
+ */
+public final class SkullTextures {
+
+    private static final String TEXTURES = "textures";
+
+    @Nullable
+    private static final MethodHandle SETTER;
+    @Nullable
+    private static final MethodHandle GETTER;
+
+    static {
+        MethodHandle setter = null;
+        MethodHandle getter = null;
+        ItemMeta sample = Bukkit.getItemFactory().getItemMeta(Material.PLAYER_HEAD);
+        if (sample != null) {
+            Class<?> type = sample.getClass();
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+            // Prefer the setter, it also updates the serialized profile the field alone does not.
+            try {
+                Method method = type.getDeclaredMethod("setProfile", GameProfile.class);
+                method.setAccessible(true);
+                setter = lookup.unreflect(method).asType(MethodType.methodType(void.class, ItemMeta.class, GameProfile.class));
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // Not available on this version
+            }
+
+            try {
+                Field field = type.getDeclaredField("profile");
+                if (field.getType() == GameProfile.class) {
+                    field.setAccessible(true);
+                    if (setter == null) {
+                        setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, ItemMeta.class, GameProfile.class));
+                    }
+                    getter = lookup.unreflectGetter(field).asType(MethodType.methodType(GameProfile.class, ItemMeta.class));
+                }
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // Not available on this version
+            }
+        }
+
+        SETTER = setter;
+        GETTER = getter;
+        if (setter == null || getter == null) {
+            HeadDB.getInstance().getLog().debug("Skull meta internals not found, using the player profile API for textures.");
+        }
+    }
+
+    private SkullTextures() {}
+
+    /**
+     * Apply a texture to skull meta.
+     *
+     * @param meta The skull meta
+     * @param uniqueId The unique id of the profile
+     * @param name The name of the profile
+     * @param texture The base64 texture value
+     */
+    public static void apply(ItemMeta meta, UUID uniqueId, String name, String texture) {
+        if (SETTER != null) {
+            GameProfile profile = new GameProfile(uniqueId, name);
+            profile.getProperties().put(TEXTURES, new Property(TEXTURES, texture));
+            try {
+                SETTER.invokeExact(meta, profile);
+                return;
+            } catch (Throwable ex) {
+                HeadDB.getInstance().getLog().debug("Failed to set skull profile for " + uniqueId + ": " + ex.getMessage());
+            }
+        }
+
+        if (meta instanceof SkullMeta skull) {
+            decodeUrl(texture).ifPresent(url -> {
+                PlayerProfile profile = Bukkit.createPlayerProfile(uniqueId);
+                PlayerTextures textures = profile.getTextures();
+                textures.setSkin(url);
+                profile.setTextures(textures);
+                skull.setOwnerProfile(profile);
+            });
+        }
+    }
+
+    /**
+     * Read the texture of skull meta.
+     *
+     * @param meta The skull meta
+     * @return The base64 texture value, else empty
+     */
+    public static Optional<String> read(ItemMeta meta) {
+        if (GETTER != null) {
+            try {
+                GameProfile profile = (GameProfile) GETTER.invokeExact(meta);
+                if (profile == null) {
+                    return Optional.empty();
+                }
+
+                return profile.getProperties().get(TEXTURES).stream()
+                        .filter(p -> p.getName().equals(TEXTURES))
+                        .findAny()
+                        .map(Property::getValue);
+            } catch (Throwable ex) {
+                HeadDB.getInstance().getLog().debug("Failed to read skull profile: " + ex.getMessage());
+            }
+        }
+
+        if (meta instanceof SkullMeta skull && skull.getOwnerProfile() != null) {
+            URL skin = skull.getOwnerProfile().getTextures().getSkin();
+            if (skin != null) {
+                return Optional.of(encodeUrl(skin));
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private static Optional<URL> decodeUrl(String texture) {
+        try {
+            JsonObject json = JsonParser.parseString(new String(Base64.getDecoder().decode(texture), StandardCharsets.UTF_8)).getAsJsonObject();
+            return Optional.of(new URL(json.getAsJsonObject("textures").getAsJsonObject("SKIN").get("url").getAsString()));
+        } catch (IllegalArgumentException | IllegalStateException | NullPointerException | MalformedURLException ex) {
+            HeadDB.getInstance().getLog().debug("Invalid texture value: " + texture);
+            return Optional.empty();
+        }
+    }
+
+    private static String encodeUrl(URL url) {
+        String json = "{\"textures\":{\"SKIN\":{\"url\":\"" + url + "\"}}}";
+        return Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -1,99 +1,332 @@
 package tsp.headdb.implementation.requester;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.bukkit.plugin.java.JavaPlugin;
 import tsp.headdb.HeadDB;
 import tsp.headdb.core.util.Utils;
 import tsp.headdb.implementation.category.Category;
 import tsp.headdb.implementation.head.Head;
 
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class Requester {
 
     private final JavaPlugin plugin;
-    private HeadProvider provider;
+    private final Map<Category, Validators> validators = new ConcurrentHashMap<>();
+    private final Map<Category, List<Head>> resolved = new ConcurrentHashMap<>();
+    private final Map<Category, Set<Integer>> resolvedBlocked = new ConcurrentHashMap<>(); // Blocklist the resolved heads were filtered with
+    private final String userAgent;
+    private final BiFunction<HeadProvider, Category, String> urls;
+    private final Supplier<Set<Integer>> blockedIds;
+    private final Consumer<String> debug;
+    private volatile HeadProvider provider;
 
     public Requester(JavaPlugin plugin, HeadProvider provider) {
+        this(plugin,
+                provider,
+                plugin.getName() + "/" + plugin.getDescription().getVersion(),
+                HeadProvider::getFormattedUrl,
+                () -> plugin.getConfig().contains("blockedHeads.ids") ? new HashSet<>(plugin.getConfig().getIntegerList("blockedHeads.ids")) : Collections.emptySet(),
+                message -> HeadDB.getInstance().getLog().debug(message));
+    }
+
+    /**
+     * @param plugin The plugin, null when not running on a server
+     * @param provider The provider to request from
+     * @param userAgent The user agent of every request
+     * @param urls Formats the url of a category for a provider
+     * @param blockedIds Retrieves the ids of the blocked heads
+     * @param debug Logs a debug message
+     */
+    Requester(@Nullable JavaPlugin plugin, HeadProvider provider, String userAgent, BiFunction<HeadProvider, Category, String> urls, Supplier<Set<Integer>> blockedIds, Consumer<String> debug) {
         this.plugin = plugin;
         this.provider = provider;
+        this.userAgent = userAgent;
+        this.urls = urls;
+        this.blockedIds = blockedIds;
+        this.debug = debug;
     }
 
     public void fetchAndResolve(Category category, Consumer<List<Head>> heads) {
+        HeadProvider provider = this.provider; // Categories may be fetched concurrently, stick to one provider per attempt.
+        Validators cached = validators.get(category);
+        List<Head> previous = resolved.get(category);
+        Set<Integer> blocked = getBlockedIds();
+        // Heads unblocked since the last request are missing from the previous result, only a full request brings them back
+        if (cached != null && (cached.provider() != provider || previous == null || !blocked.containsAll(resolvedBlocked.getOrDefault(category, Collections.emptySet())))) {
+            cached = null;
+        }
+
         try {
-            fetch(category, response -> {
-                List<Head> result = new ArrayList<>();
-                if (response.code() != 200) {
-                    heads.accept(result);
+            HttpURLConnection connection = open(provider, category, cached);
+            try {
+                int code = connection.getResponseCode();
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                    debug.accept("Category not modified: " + category.getName());
+                    heads.accept(filterBlocked(previous, blocked));
                     return;
                 }
 
-                JsonArray main = JsonParser.parseString(response.response()).getAsJsonArray();
-                for (JsonElement entry : main) {
-                    JsonObject obj = entry.getAsJsonObject();
-                    int id = obj.get("id").getAsInt();
-
-                    if (plugin.getConfig().contains("blockedHeads.ids")) {
-                        List<Integer> blockedIds = plugin.getConfig().getIntegerList("blockedHeads.ids");
-                        if (blockedIds.contains(id)) {
-                            HeadDB.getInstance().getLog().debug("Skipped blocked head: " + obj.get("name").getAsString() + "(" + id + ")");
-                            continue;
-                        }
-                    }
+                if (code != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Unexpected response code: " + code);
+                }
 
-                    result.add(new Head(
-                            id,
-                            Utils.validateUniqueId(obj.get("uuid").getAsString()).orElse(UUID.randomUUID()),
-                            obj.get("name").getAsString(),
-                            obj.get("value").getAsString(),
-                            obj.get("tags").getAsString(),
-                            response.date(),
-                            category
-                    ));
+                String date = connection.getHeaderField("date");
+                List<Head> result;
+                // Heads are created while the array is being read, the body is never buffered as a whole.
+                try (Reader reader = new InputStreamReader(body(connection), StandardCharsets.UTF_8)) {
+                    result = resolve(reader, category, date, blocked);
                 }
 
+                resolved.put(category, result);
+                resolvedBlocked.put(category, blocked);
+                validators.put(category, new Validators(provider, connection.getHeaderField("etag"), connection.getHeaderField("last-modified"), date));
                 heads.accept(result);
-            });
-        } catch (IOException ex) {
-            HeadDB.getInstance().getLog().debug("Failed to load from provider: " + provider.name());
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException ex) {
+            debug.accept("Failed to load from provider: " + provider.name());
             if (HeadDB.getInstance().getConfig().getBoolean("fallback") && provider != HeadProvider.HEAD_ARCHIVE) { // prevent recursion. Maybe switch to an attempts counter down in the future
-                provider = HeadProvider.HEAD_ARCHIVE;
+                this.provider = HeadProvider.HEAD_ARCHIVE;
                 fetchAndResolve(category, heads);
             }
         }
     }
 
-    public void fetch(Category category, Consumer<Response> response) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) new URL(provider.getFormattedUrl(category)).openConnection();
-        connection.setConnectTimeout(5000);
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("User-Agent", plugin.getName() + "/" + plugin.getDescription().getVersion());
-        connection.setRequestProperty("Accept", "application/json");
+    /**
+     * Resolve the heads of a category from a provider response.
+     *
+     * @param source The response body
+     * @param category The category the heads belong to
+     * @param date The date of the response
+     * @return The heads
+     * @throws IOException If the response could not be read
+     */
+    public List<Head> resolve(Reader source, Category category, String date) throws IOException {
+        return resolve(source, category, date, getBlockedIds());
+    }
+
+    private List<Head> resolve(Reader source, Category category, String date, Set<Integer> blockedIds) throws IOException {
+        List<Head> result = new ArrayList<>();
+
+        JsonReader reader = new JsonReader(source);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Integer id = null;
+            String uuid = null;
+            String name = null;
+            String value = null;
+            String tags = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+
+                switch (field) {
+                    case "id" -> id = reader.nextInt();
+                    case "uuid" -> uuid = reader.nextString();
+                    case "name" -> name = reader.nextString();
+                    case "value" -> value = reader.nextString();
+                    case "tags" -> tags = reader.nextString();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            // Heads are cached and looked up by id, entries without one can not be told apart
+            if (id == null || name == null || value == null) {
+                continue;
+            }
+
+            if (blockedIds.contains(id)) {
+                debug.accept("Skipped blocked head: " + name + "(" + id + ")");
+                continue;
+            }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
+            UUID uniqueId = uuid != null ? Utils.validateUniqueId(uuid).orElse(null) : null;
+            result.add(new Head(
+                    id,
+                    uniqueId != null ? uniqueId : UUID.randomUUID(),
+                    name,
+                    value,
+                    tags != null ? tags : "",
+                    date,
+                    category
+            ));
+        }
+        reader.endArray();
+
+        return result;
+    }
+
+    public void fetch(Category category, Consumer<Response> response) throws IOException {
+        HttpURLConnection connection = open(provider, category, null);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body(connection), StandardCharsets.UTF_8))) {
             StringBuilder builder = new StringBuilder();
             String line;
             while ((line = reader.readLine()) != null) {
                 builder.append(line);
             }
 
-            response.accept(new Response(builder.toString(), connection.getResponseCode(), connection.getHeaderField("date")));
+            response.accept(new Response(builder.toString(), connection.getResponseCode(), connection.getHeaderField("date"), connection.getHeaderField("etag"), connection.getHeaderField("last-modified")));
         }
 
         connection.disconnect();
     }
 
+    private HttpURLConnection open(HeadProvider provider, Category category, @Nullable Validators validators) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(urls.apply(provider, category)).openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("User-Agent", userAgent);
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        if (validators != null) {
+            if (validators.etag() != null) {
+                connection.setRequestProperty("If-None-Match", validators.etag());
+            }
+            if (validators.modifiedSince() != null) {
+                connection.setRequestProperty("If-Modified-Since", validators.modifiedSince());
+            }
+        }
+
+        return connection;
+    }
+
+    /**
+     * Retrieve the response body of a connection, decompressed according to its {@code Content-Encoding}.
+     *
+     * @param connection The connection
+     * @return The decoded body
+     * @throws IOException If the body could not be read
+     */
+    private InputStream body(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getInputStream();
+        String encoding = connection.getContentEncoding();
+        if (encoding == null) {
+            return in;
+        }
+
+        encoding = encoding.trim().toLowerCase(Locale.ROOT);
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(in, 8192);
+        } else if (encoding.equals("deflate")) {
+            // Some servers send raw deflate data instead of the zlib format, check for the zlib header.
+            BufferedInputStream buffered = new BufferedInputStream(in, 8192);
+            buffered.mark(2);
+            int cmf = buffered.read();
+            int flg = buffered.read();
+            buffered.reset();
+            boolean zlib = cmf != -1 && flg != -1 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+            Inflater inflater = new Inflater(!zlib);
+            return new InflaterInputStream(buffered, inflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        return in;
+    }
+
+    /**
+     * Seed the validators and heads of a category, for example from a snapshot on disk,
+     * so the next request for it can be conditional.
+     *
+     * @param category The category
+     * @param validators The validators returned when the heads were fetched
+     * @param heads The heads that were resolved
+     */
+    public void seed(Category category, Validators validators, List<Head> heads) {
+        resolved.put(category, heads);
+        resolvedBlocked.put(category, getBlockedIds()); // The heads are filtered with the current blocklist when loaded
+        this.validators.put(category, validators);
+    }
+
+    /**
+     * Retrieve the ids of the heads blocked in the config.
+     *
+     * @return The blocked ids
+     */
+    public Set<Integer> getBlockedIds() {
+        return blockedIds.get();
+    }
+
+    /**
+     * Remove blocked heads from heads that were resolved earlier, for example before the blocklist changed.
+     *
+     * @param heads The heads
+     * @param blocked The blocked ids
+     * @return The heads without the blocked ones, the same list if none are blocked
+     */
+    public List<Head> filterBlocked(List<Head> heads, Set<Integer> blocked) {
+        if (blocked.isEmpty() || heads.stream().noneMatch(head -> blocked.contains(head.getId()))) {
+            return heads;
+        }
+
+        List<Head> result = new ArrayList<>(heads.size());
+        for (Head head : heads) {
+            if (!blocked.contains(head.getId())) {
+                result.add(head);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replace the heads kept for conditional requests with an equal list, so the original objects can be collected.
+     *
+     * @param category The category
+     * @param heads The same heads, for example backed by the columns of a snapshot
+     */
+    public void retain(Category category, List<Head> heads) {
+        resolved.computeIfPresent(category, (key, current) -> heads);
+    }
+
+    /**
+     * Retrieve the validators of the last successful request for each category.
+     *
+     * @return Unmodifiable map of validators
+     */
+    public Map<Category, Validators> getValidators() {
+        return Collections.unmodifiableMap(validators);
+    }
+
     public HeadProvider getProvider() {
         return provider;
     }
@@ -1,3 +1,9 @@
 package tsp.headdb.implementation.requester;
 
-public record Response(String response, int code, String date) {}
\ No newline at end of file
+public record Response(String response, int code, String date, String etag, String lastModified) {
+
+    public Response(String response, int code, String date) {
+        this(response, code, date, null, null);
+    }
+
+}
@@ -0,0 +1,27 @@
+package tsp.headdb.implementation.requester;
+
+import javax.annotation.Nullable;
+
+/**
+ * Cache validators returned by a {@link HeadProvider} for a category.
+ * They are sent back on the next request so unchanged categories are answered with {@code 304 Not Modified}.
+ *
+ * @param provider The provider that returned the validators
+ * @param etag The {@code ETag} header
+ * @param lastModified The {@code Last-Modified} header
+ * @param date The {@code Date} header
+ */
+public record Validators(HeadProvider provider, @Nullable String etag, @Nullable String lastModified, @Nullable String date) {
+
+    /**
+     * Retrieve the value for the {@code If-Modified-Since} header.
+     * Falls back to the response date if the provider does not send {@code Last-Modified}.
+     *
+     * @return The value, else null
+     */
+    @Nullable
+    public String modifiedSince() {
+        return lastModified != null ? lastModified : date;
+    }
+
+}
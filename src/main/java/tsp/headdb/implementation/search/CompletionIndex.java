@@ -0,0 +1,100 @@
+package tsp.headdb.implementation.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable sorted array of completion values, answering case-insensitive prefix queries with a binary search.
+ */
+public final class CompletionIndex {
+
+    private final String[] keys;
+    private final String[] values;
+
+    private CompletionIndex(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Build an index over the values. Duplicates are only kept once.
+     *
+     * @param values The values to complete
+     * @return The index
+     */
+    public static CompletionIndex build(List<String> values) {
+        return build(values, values.stream().map(value -> value.toLowerCase(Locale.ROOT)).toList());
+    }
+
+    /**
+     * Build an index over the values with keys that were already lowercased, so strings held elsewhere can be shared.
+     * Duplicates are only kept once.
+     *
+     * @param values The values to complete
+     * @param keys The lowercase form of each value
+     * @return The index
+     */
+    public static CompletionIndex build(List<String> values, List<String> keys) {
+        String[][] entries = new String[values.size()][];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new String[]{keys.get(i), values.get(i)};
+        }
+
+        Arrays.sort(entries, (a, b) -> {
+            int result = a[0].compareTo(b[0]);
+            return result != 0 ? result : a[1].compareTo(b[1]);
+        });
+
+        String[] sortedKeys = new String[entries.length];
+        String[] result = new String[entries.length];
+        int size = 0;
+        for (String[] entry : entries) {
+            if (size > 0 && result[size - 1].equals(entry[1])) {
+                continue;
+            }
+
+            sortedKeys[size] = entry[0];
+            result[size++] = entry[1];
+        }
+
+        return new CompletionIndex(Arrays.copyOf(sortedKeys, size), Arrays.copyOf(result, size));
+    }
+
+    /**
+     * Retrieve the values starting with the prefix, ignoring case.
+     *
+     * @param prefix The prefix typed so far
+     * @param limit Maximum amount of values
+     * @return Matching values in alphabetical order
+     */
+    public List<String> complete(String prefix, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        String key = prefix.toLowerCase(Locale.ROOT);
+        int index = Arrays.binarySearch(keys, key);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            while (index > 0 && keys[index - 1].equals(key)) {
+                index--;
+            }
+        }
+
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        for (int i = index; i < keys.length && result.size() < limit && keys[i].startsWith(key); i++) {
+            result.add(values[i]);
+        }
+
+        return result;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+}
@@ -0,0 +1,187 @@
+package tsp.headdb.implementation.search;
+
+import org.bukkit.ChatColor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable trigram inverted index over normalized strings, used for substring search.
+ * Matching follows the same semantics as a lowercase, color stripped {@link String#contains(CharSequence)}.
+ */
+public final class NGramIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private final String[] normalized;
+    private final long[] keys;
+    private final int[][] postings;
+    private final int mask;
+
+    private NGramIndex(String[] normalized, long[] keys, int[][] postings) {
+        this.normalized = normalized;
+        this.keys = keys;
+        this.postings = postings;
+        this.mask = keys.length - 1;
+    }
+
+    /**
+     * Build an index over the values. The position of each value is what queries return.
+     *
+     * @param values The values to index
+     * @return The index
+     */
+    public static NGramIndex build(String[] values) {
+        String[] normalized = new String[values.length];
+        Map<Long, Postings> grams = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            String value = normalize(values[i]);
+            normalized[i] = value;
+            for (int j = 0; j + 3 <= value.length(); j++) {
+                grams.computeIfAbsent(gram(value, j), k -> new Postings()).add(i);
+            }
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(2, grams.size()) * 2 - 1) << 1;
+        long[] keys = new long[capacity];
+        int[][] postings = new int[capacity][];
+        int mask = capacity - 1;
+        for (Map.Entry<Long, Postings> entry : grams.entrySet()) {
+            long key = entry.getKey();
+            int slot = mix(key) & mask;
+            while (postings[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot] = key;
+            postings[slot] = entry.getValue().toArray();
+        }
+
+        return new NGramIndex(normalized, keys, postings);
+    }
+
+    /**
+     * Normalize a value the same way the index does.
+     *
+     * @param value The value
+     * @return Lowercase value without color codes
+     */
+    public static String normalize(String value) {
+        String result = ChatColor.stripColor(value.toLowerCase(Locale.ROOT));
+        return result != null ? result : "";
+    }
+
+    /**
+     * Find every value containing the query.
+     *
+     * @param query The query, it is lowercased but not stripped of colors
+     * @return Positions of matching values in ascending order
+     */
+    public int[] search(String query) {
+        query = query.toLowerCase(Locale.ROOT);
+        if (query.length() < 3) {
+            return scan(query);
+        }
+
+        // Collect the posting list of every trigram, a missing one means nothing can match.
+        int count = query.length() - 2;
+        int[][] lists = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int[] list = postings(gram(query, i));
+            if (list.length == 0) {
+                return NONE;
+            }
+
+            lists[i] = list;
+        }
+
+        // Intersect starting from the shortest list, then verify the remaining candidates.
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] candidates = lists[0];
+        if (lists.length > 1) {
+            candidates = intersect(candidates, lists[1]);
+        }
+
+        int[] result = new int[candidates.length];
+        int size = 0;
+        for (int candidate : candidates) {
+            if (normalized[candidate].contains(query)) {
+                result[size++] = candidate;
+            }
+        }
+
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Retrieve the normalized value at the position.
+     *
+     * @param position The position
+     * @return The normalized value
+     */
+    public String get(int position) {
+        return normalized[position];
+    }
+
+    public int size() {
+        return normalized.length;
+    }
+
+    private int[] scan(String query) {
+        int[] result = new int[normalized.length];
+        int size = 0;
+        for (int i = 0; i < normalized.length; i++) {
+            if (normalized[i].contains(query)) {
+                result[size++] = i;
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    private int[] postings(long key) {
+        int slot = mix(key) & mask;
+        int[] list;
+        while ((list = postings[slot]) != null) {
+            if (keys[slot] == key) {
+                return list;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return NONE;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                result[size++] = a[i];
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    private static long gram(String value, int offset) {
+        return ((long) value.charAt(offset) << 32) | ((long) value.charAt(offset + 1) << 16) | value.charAt(offset + 2);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
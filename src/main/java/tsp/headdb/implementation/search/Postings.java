@@ -0,0 +1,34 @@
+package tsp.headdb.implementation.search;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of ascending positions, collected while an index is built.
+ */
+final class Postings {
+
+    private int[] values = new int[4];
+    private int size;
+
+    /**
+     * Append a position. Positions must be added in ascending order, repeating the last one is ignored.
+     *
+     * @param value The position
+     */
+    void add(int value) {
+        if (size > 0 && values[size - 1] == value) {
+            return; // Same value matched more than once
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+
+        values[size++] = value;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+}
@@ -0,0 +1,423 @@
+package tsp.headdb.implementation.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Immutable ranked search over head names and tags.
+ * <p>
+ * Queries are split into tokens, every token is matched exactly, by prefix, by substring
+ * and with typos (through a BK-tree over all known tokens) against the tokens of each head.
+ * Scores are weighted towards name matches and whole query matches, and only the best results are kept.
+ */
+public final class SearchEngine {
+
+    // Per query token, the best match counts
+    private static final int NAME_EXACT = 60;
+    private static final int NAME_PREFIX = 40;
+    private static final int NAME_FUZZY = 30;
+    private static final int NAME_SUBSTRING = 20;
+    private static final int TAG_EXACT = 25;
+    private static final int TAG_PREFIX = 15;
+    private static final int TAG_FUZZY = 10;
+
+    // Whole query against the whole name
+    private static final int QUERY_EXACT = 200;
+    private static final int QUERY_PREFIX = 100;
+    private static final int QUERY_SUBSTRING = 50;
+
+    private static final int[] NONE = new int[0];
+    // Shared by every generation, so replaced engines do not leave buffers behind on the search threads
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<>();
+
+    private final NGramIndex names;
+    private final String[] tokens;
+    private final int[][] namePostings;
+    private final int[][] tagPostings;
+    private final BKNode root;
+
+    /**
+     * Build a search engine over the name and tag indexes of the same heads.
+     *
+     * @param names Index of the head names
+     * @param tags Index of the head tags
+     */
+    public SearchEngine(NGramIndex names, NGramIndex tags) {
+        this.names = names;
+
+        Map<String, int[]> dictionary = new HashMap<>(); // token -> {name postings id, tag postings id}
+        List<Postings> nameLists = new ArrayList<>();
+        List<Postings> tagLists = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            for (String token : tokenize(names.get(i))) {
+                int[] entry = dictionary.computeIfAbsent(token, k -> new int[]{-1, -1});
+                if (entry[0] == -1) {
+                    entry[0] = nameLists.size();
+                    nameLists.add(new Postings());
+                }
+                nameLists.get(entry[0]).add(i);
+            }
+
+            for (String token : tokenize(tags.get(i))) {
+                int[] entry = dictionary.computeIfAbsent(token, k -> new int[]{-1, -1});
+                if (entry[1] == -1) {
+                    entry[1] = tagLists.size();
+                    tagLists.add(new Postings());
+                }
+                tagLists.get(entry[1]).add(i);
+            }
+        }
+
+        this.tokens = dictionary.keySet().toArray(new String[0]);
+        Arrays.sort(tokens);
+        this.namePostings = new int[tokens.length][];
+        this.tagPostings = new int[tokens.length][];
+        BKNode tree = null;
+        for (int i = 0; i < tokens.length; i++) {
+            int[] entry = dictionary.get(tokens[i]);
+            namePostings[i] = entry[0] != -1 ? nameLists.get(entry[0]).toArray() : NONE;
+            tagPostings[i] = entry[1] != -1 ? tagLists.get(entry[1]).toArray() : NONE;
+            if (!fuzzy(tokens[i])) {
+                continue;
+            }
+
+            if (tree == null) {
+                tree = new BKNode(i);
+            } else {
+                tree.insert(i, tokens);
+            }
+        }
+        this.root = tree;
+    }
+
+    /**
+     * Search for the best matching heads.
+     *
+     * @param query The query
+     * @param limit Maximum amount of results
+     * @return Positions of the matching heads, best match first
+     */
+    public int[] search(String query, int limit) {
+        String normalized = NGramIndex.normalize(query).trim();
+        List<String> terms = tokenize(normalized);
+        if (terms.isEmpty() || limit <= 0) {
+            int[] result = names.search(normalized);
+            return result.length > limit ? Arrays.copyOf(result, Math.max(0, limit)) : result;
+        }
+
+        Scratch scratch = scratch(names.size());
+        int[] scores = scratch.scores;
+        int[] matched = scratch.matched;
+        int[] best = scratch.best;
+        int[] seen = scratch.seen;
+        int[] touched = scratch.touched;
+        int[] current = scratch.current;
+        int touchedSize = 0;
+
+        for (int term = 0; term < terms.size(); term++) {
+            String token = terms.get(term);
+            int currentSize = 0;
+
+            // Exact and prefix matches on whole tokens
+            int from = lowerBound(token);
+            int to = token.length() > 1 ? upperBound(token, from) : (from < tokens.length && tokens[from].equals(token) ? from + 1 : from);
+            for (int i = from; i < to; i++) {
+                boolean exact = tokens[i].length() == token.length();
+                for (int position : namePostings[i]) {
+                    currentSize = offer(position, exact ? NAME_EXACT : NAME_PREFIX, term, seen, best, current, currentSize);
+                    current = grow(current, currentSize);
+                }
+                for (int position : tagPostings[i]) {
+                    currentSize = offer(position, exact ? TAG_EXACT : TAG_PREFIX, term, seen, best, current, currentSize);
+                    current = grow(current, currentSize);
+                }
+            }
+
+            // Typos
+            if (root != null && token.length() >= 4 && fuzzy(token)) {
+                int maxDistance = token.length() >= 6 ? 2 : 1;
+                Deque<BKNode> stack = new ArrayDeque<>();
+                stack.push(root);
+                while (!stack.isEmpty()) {
+                    BKNode node = stack.pop();
+                    int distance = distance(token, tokens[node.token]);
+                    if (distance > 0 && distance <= maxDistance) {
+                        int penalty = (distance - 1) * 10;
+                        for (int position : namePostings[node.token]) {
+                            currentSize = offer(position, NAME_FUZZY - penalty, term, seen, best, current, currentSize);
+                            current = grow(current, currentSize);
+                        }
+                        for (int position : tagPostings[node.token]) {
+                            currentSize = offer(position, Math.max(1, TAG_FUZZY - penalty), term, seen, best, current, currentSize);
+                            current = grow(current, currentSize);
+                        }
+                    }
+
+                    for (int i = 0; i < node.size; i++) {
+                        if (Math.abs(node.distances[i] - distance) <= maxDistance) {
+                            stack.push(node.children[i]);
+                        }
+                    }
+                }
+            }
+
+            // Substrings of names that do not line up with a token, ranked below the token matches
+            for (int position : names.search(token)) {
+                currentSize = offer(position, NAME_SUBSTRING, term, seen, best, current, currentSize);
+                current = grow(current, currentSize);
+            }
+
+            for (int i = 0; i < currentSize; i++) {
+                int position = current[i];
+                if (matched[position] == 0) {
+                    touched = grow(touched, touchedSize);
+                    touched[touchedSize++] = position;
+                }
+                scores[position] += best[position];
+                matched[position]++;
+            }
+        }
+
+        // Prefer heads matching every term, fall back to partial matches when there are none.
+        int required = terms.size();
+        boolean complete = false;
+        for (int i = 0; i < touchedSize; i++) {
+            if (matched[touched[i]] == required) {
+                complete = true;
+                break;
+            }
+        }
+
+        PriorityQueue<Integer> top = new PriorityQueue<>(Math.min(limit, Math.max(1, touchedSize)), (a, b) -> scores[a] != scores[b] ? Integer.compare(scores[a], scores[b]) : Integer.compare(b, a));
+        for (int i = 0; i < touchedSize; i++) {
+            int position = touched[i];
+            if (complete && matched[position] != required) {
+                continue;
+            }
+
+            String name = names.get(position);
+            if (name.equals(normalized)) {
+                scores[position] += QUERY_EXACT;
+            } else if (name.startsWith(normalized)) {
+                scores[position] += QUERY_PREFIX;
+            } else if (name.contains(normalized)) {
+                scores[position] += QUERY_SUBSTRING;
+            }
+
+            if (top.size() < limit) {
+                top.add(position);
+            } else if (top.comparator().compare(position, top.peek()) > 0) {
+                top.poll();
+                top.add(position);
+            }
+        }
+
+        int[] result = new int[top.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            //noinspection DataFlowIssue
+            result[i] = top.poll();
+        }
+
+        // Leave the buffers clean for the next query on this thread
+        for (int i = 0; i < touchedSize; i++) {
+            int position = touched[i];
+            scores[position] = 0;
+            matched[position] = 0;
+            seen[position] = -1;
+        }
+        scratch.touched = touched;
+        scratch.current = current;
+
+        if (result.length == 0) {
+            // Nothing ranked, still return what a plain substring search finds
+            result = names.search(normalized);
+            return result.length > limit ? Arrays.copyOf(result, limit) : result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Split a normalized value into its words.
+     *
+     * @param value The value
+     * @return The tokens, in order
+     */
+    public static List<String> tokenize(String value) {
+        List<String> result = new ArrayList<>(4);
+        int start = -1;
+        for (int i = 0; i <= value.length(); i++) {
+            boolean part = i < value.length() && Character.isLetterOrDigit(value.charAt(i));
+            if (part && start == -1) {
+                start = i;
+            } else if (!part && start != -1) {
+                result.add(value.substring(start, i));
+                start = -1;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Check whether typos make sense for a token. Numbers are only matched exactly.
+     *
+     * @param token The token
+     * @return If the token takes part in fuzzy matching
+     */
+    private static boolean fuzzy(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (Character.isDigit(token.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int offer(int position, int score, int term, int[] seen, int[] best, int[] current, int currentSize) {
+        if (seen[position] != term) {
+            seen[position] = term;
+            best[position] = score;
+            current[currentSize++] = position;
+        } else if (score > best[position]) {
+            best[position] = score;
+        }
+
+        return currentSize;
+    }
+
+    /**
+     * Retrieve the buffers of this thread, replacing them if they are too small for the heads.
+     *
+     * @param size The amount of heads
+     * @return The buffers
+     */
+    private static Scratch scratch(int size) {
+        Scratch scratch = SCRATCH.get();
+        if (scratch == null || scratch.scores.length < size) {
+            scratch = new Scratch(size);
+            SCRATCH.set(scratch);
+        }
+
+        return scratch;
+    }
+
+    private static int[] grow(int[] array, int size) {
+        return size < array.length ? array : Arrays.copyOf(array, array.length * 2);
+    }
+
+    private int lowerBound(String token) {
+        int index = Arrays.binarySearch(tokens, token);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int upperBound(String prefix, int from) {
+        int low = from;
+        int high = tokens.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokens[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] next = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            next[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                next[j] = Math.min(Math.min(next[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+
+            int[] swap = previous;
+            previous = next;
+            next = swap;
+        }
+
+        return previous[b.length()];
+    }
+
+    private static final class BKNode {
+
+        private final int token;
+        private int[] distances = NONE;
+        private BKNode[] children = new BKNode[0];
+        private int size;
+
+        BKNode(int token) {
+            this.token = token;
+        }
+
+        void insert(int value, String[] tokens) {
+            BKNode node = this;
+            while (true) {
+                int distance = distance(tokens[value], tokens[node.token]);
+                BKNode child = null;
+                for (int i = 0; i < node.size; i++) {
+                    if (node.distances[i] == distance) {
+                        child = node.children[i];
+                        break;
+                    }
+                }
+
+                if (child == null) {
+                    if (node.size == node.distances.length) {
+                        int capacity = Math.max(2, node.size * 2);
+                        node.distances = Arrays.copyOf(node.distances, capacity);
+                        node.children = Arrays.copyOf(node.children, capacity);
+                    }
+                    node.distances[node.size] = distance;
+                    node.children[node.size++] = new BKNode(value);
+                    return;
+                }
+
+                node = child;
+            }
+        }
+
+    }
+
+    /**
+     * Per thread buffers sized to at least the amount of heads, so queries do not allocate them every time.
+     */
+    private static final class Scratch {
+
+        private final int[] scores;
+        private final int[] matched;
+        private final int[] best;
+        private final int[] seen;
+        private int[] touched;
+        private int[] current;
+
+        Scratch(int size) {
+            this.scores = new int[size];
+            this.matched = new int[size];
+            this.best = new int[size];
+            this.seen = new int[size];
+            Arrays.fill(seen, -1);
+            this.touched = new int[Math.max(1, Math.min(size, 1024))];
+            this.current = new int[Math.max(1, Math.min(size, 1024))];
+        }
+
+    }
+
+}
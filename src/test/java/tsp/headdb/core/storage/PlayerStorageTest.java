@@ -0,0 +1,252 @@
+package tsp.headdb.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlayerStorageTest {
+
+    private static final long DELAY = 100;
+
+    private final MemoryBackend backend = new MemoryBackend();
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final Set<UUID> online = new HashSet<>();
+    private final PlayerStorage storage = new PlayerStorage(backend, DELAY, scheduler::schedule, online::contains);
+
+    @Test
+    void populationFollowsOnlinePlayers() {
+        Random random = new Random(42);
+        List<UUID> population = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            population.add(new UUID(0, i));
+        }
+
+        Map<UUID, Set<Long>> expected = new HashMap<>();
+        Map<UUID, Long> quitAt = new HashMap<>();
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 100; i++) {
+                UUID player = population.get(random.nextInt(population.size()));
+                if (online.contains(player)) {
+                    long key = random.nextInt(50);
+                    if (random.nextBoolean()) {
+                        storage.addFavorite(player, key);
+                        expected.computeIfAbsent(player, id -> new HashSet<>()).add(key);
+                    } else {
+                        storage.removeFavorite(player, key);
+                        expected.computeIfAbsent(player, id -> new HashSet<>()).remove(key);
+                    }
+
+                    if (random.nextInt(4) == 0) {
+                        quit(player);
+                        quitAt.put(player, scheduler.now());
+                    }
+                } else {
+                    join(player);
+                    quitAt.remove(player);
+                    assertEquals(expected.getOrDefault(player, Collections.emptySet()), storage.getFavorites(player));
+                }
+            }
+
+            scheduler.advance(10);
+            // Only online players and players who quit within the delay are kept
+            for (UUID player : storage.getPlayersMap().keySet()) {
+                assertTrue(online.contains(player) || scheduler.now() - quitAt.get(player) < DELAY, "Kept " + player + " after the delay");
+            }
+        }
+
+        new ArrayList<>(online).forEach(this::quit);
+        scheduler.advance(DELAY);
+        assertTrue(storage.getPlayersMap().isEmpty());
+
+        // Everything reached the backend
+        for (Map.Entry<UUID, Set<Long>> entry : expected.entrySet()) {
+            join(entry.getKey());
+            assertEquals(entry.getValue(), storage.getFavorites(entry.getKey()));
+        }
+    }
+
+    @Test
+    void evictedOnlyAfterDelay() {
+        UUID player = UUID.randomUUID();
+        join(player);
+        storage.addFavorite(player, 1);
+        quit(player);
+
+        scheduler.advance(DELAY - 1);
+        assertTrue(storage.get(player).isPresent());
+        scheduler.advance(1);
+        assertFalse(storage.get(player).isPresent());
+
+        join(player);
+        assertEquals(Set.of(1L), storage.getFavorites(player));
+    }
+
+    @Test
+    void rejoinWithinDelayKeepsData() {
+        UUID player = UUID.randomUUID();
+        join(player);
+        storage.addFavorite(player, 1);
+        quit(player);
+
+        scheduler.advance(DELAY / 2);
+        join(player);
+        storage.addFavorite(player, 2);
+        scheduler.advance(DELAY);
+
+        assertEquals(Set.of(1L, 2L), storage.getFavorites(player));
+        assertEquals(1, backend.loads.get(player), "Rejoining within the delay must not load again");
+    }
+
+    @Test
+    void lateUnloadNeverOverwritesNewerLoad() {
+        UUID player = UUID.randomUUID();
+        join(player);
+        storage.addFavorite(player, 1);
+        quit(player); // First unload due at DELAY
+
+        scheduler.advance(10);
+        join(player);
+        storage.addFavorite(player, 2);
+        scheduler.advance(10);
+        quit(player); // Second unload due at DELAY + 20
+
+        scheduler.advance(DELAY - 20);
+        assertEquals(Set.of(1L, 2L), storage.getFavorites(player), "The first unload must not drop the player");
+
+        scheduler.advance(20);
+        assertFalse(storage.get(player).isPresent());
+        join(player);
+        assertEquals(Set.of(1L, 2L), storage.getFavorites(player));
+    }
+
+    @Test
+    void editsWhileLoadingAreApplied() throws Exception {
+        UUID player = UUID.randomUUID();
+        backend.favorites.put(player, new HashSet<>(Set.of(1L, 2L)));
+        backend.blocked = new CountDownLatch(1);
+
+        CompletableFuture<Void> joining = CompletableFuture.runAsync(() -> join(player));
+        assertTrue(backend.loading.await(5, TimeUnit.SECONDS));
+        storage.removeFavorite(player, 1);
+        storage.addFavorite(player, 3);
+        backend.blocked.countDown();
+        joining.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Set.of(2L, 3L), storage.getFavorites(player));
+        assertEquals(Set.of(2L, 3L), backend.favorites.get(player));
+    }
+
+    private void join(UUID player) {
+        storage.join(player);
+        synchronized (online) {
+            online.add(player);
+        }
+    }
+
+    private void quit(UUID player) {
+        synchronized (online) {
+            online.remove(player);
+        }
+        storage.quit(player);
+    }
+
+    /**
+     * Runs delayed tasks when the time is advanced, in the order they are due.
+     */
+    private static final class ManualScheduler {
+
+        private final PriorityQueue<long[]> due = new PriorityQueue<>(Comparator.<long[]>comparingLong(entry -> entry[0]).thenComparingLong(entry -> entry[1]));
+        private final List<Runnable> tasks = new ArrayList<>();
+        private long now;
+
+        void schedule(Runnable task, long delay) {
+            due.add(new long[]{now + delay, tasks.size()});
+            tasks.add(task);
+        }
+
+        void advance(long ticks) {
+            long target = now + ticks;
+            while (!due.isEmpty() && due.peek()[0] <= target) {
+                long[] entry = due.poll();
+                now = entry[0];
+                tasks.get((int) entry[1]).run();
+            }
+            now = target;
+        }
+
+        long now() {
+            return now;
+        }
+
+    }
+
+    private static final class MemoryBackend implements PlayerBackend {
+
+        private final Map<UUID, Set<Long>> favorites = new ConcurrentHashMap<>();
+        private final Map<UUID, Integer> loads = new ConcurrentHashMap<>();
+        private final CountDownLatch loading = new CountDownLatch(1);
+        private volatile CountDownLatch blocked;
+
+        @Override
+        public boolean isLazy() {
+            return true;
+        }
+
+        @Override
+        public CompletableFuture<Collection<PlayerData>> loadAll() {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        @Nullable
+        @Override
+        public PlayerData load(UUID uniqueId) {
+            loads.merge(uniqueId, 1, Integer::sum);
+            Set<Long> stored = favorites.get(uniqueId);
+            PlayerData data = stored != null ? new PlayerData(uniqueId, new HashSet<>(stored)) : null;
+            loading.countDown();
+            if (blocked != null) {
+                try {
+                    blocked.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return data;
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void addFavorite(UUID uniqueId, long key) {
+            favorites.computeIfAbsent(uniqueId, id -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+
+        @Override
+        public void removeFavorite(UUID uniqueId, long key) {
+            favorites.computeIfAbsent(uniqueId, id -> ConcurrentHashMap.newKeySet()).remove(key);
+        }
+
+        @Override
+        public void clearFavorites(UUID uniqueId) {
+            favorites.remove(uniqueId);
+        }
+
+        @Override
+        public boolean backup() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+
+    }
+
+}
@@ -0,0 +1,145 @@
+package tsp.headdb.implementation.requester;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tsp.headdb.implementation.category.Category;
+import tsp.headdb.implementation.head.Head;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequesterEncodingTest {
+
+    private static final int HEADS = 2000;
+
+    private final List<String> accepted = new ArrayList<>(); // Accept-Encoding of every request
+    private volatile String encoding; // Content-Encoding to respond with, null for a plain body
+    private volatile boolean raw; // Send deflate without the zlib header
+    private HttpServer server;
+    private Requester requester;
+
+    @BeforeEach
+    void start() throws IOException {
+        byte[] body = body().getBytes(StandardCharsets.UTF_8);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            synchronized (accepted) {
+                accepted.add(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            }
+
+            byte[] response = encode(body);
+            if (encoding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            }
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        requester = new Requester(null, HeadProvider.HEAD_STORAGE, "HeadDB/test", (provider, category) -> base + category.getName() + ".json", Collections::emptySet, message -> {});
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void plain() {
+        assertHeads(fetch());
+        assertEquals("gzip, deflate", accepted.get(0));
+    }
+
+    @Test
+    void gzip() {
+        encoding = "gzip";
+        assertHeads(fetch());
+    }
+
+    @Test
+    void deflate() {
+        encoding = "deflate";
+        assertHeads(fetch());
+    }
+
+    @Test
+    void rawDeflate() {
+        encoding = "deflate";
+        raw = true;
+        assertHeads(fetch());
+    }
+
+    @Test
+    void encodingIgnoresCase() {
+        encoding = " GZIP ";
+        assertHeads(fetch());
+    }
+
+    private byte[] encode(byte[] body) throws IOException {
+        if (encoding == null) {
+            return body;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (OutputStream out = encoding.trim().equalsIgnoreCase("gzip") ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes, deflater)) {
+            out.write(body);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<Head> fetch() {
+        AtomicReference<List<Head>> result = new AtomicReference<>();
+        requester.fetchAndResolve(Category.ANIMALS, result::set);
+        assertNotNull(result.get(), "No heads were returned");
+        return result.get();
+    }
+
+    private static void assertHeads(List<Head> heads) {
+        assertEquals(HEADS, heads.size());
+        for (int i = 0; i < HEADS; i++) {
+            Head head = heads.get(i);
+            assertEquals(i + 1, head.getId());
+            assertEquals("Head " + (i + 1) + " ÄÖÜ", head.getName());
+            assertEquals(texture(i + 1), head.getTexture());
+        }
+    }
+
+    private static String body() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 1; i <= HEADS; i++) {
+            if (i > 1) {
+                builder.append(',');
+            }
+            builder.append("{\"id\": ").append(i)
+                    .append(", \"name\": \"Head ").append(i).append(" ÄÖÜ\"")
+                    .append(", \"value\": \"").append(texture(i)).append("\"")
+                    .append(", \"tags\": \"test\"}");
+        }
+        return builder.append(']').toString();
+    }
+
+    private static String texture(int id) {
+        return "eyJ0ZXh0dXJlcyI6eyJTS0lOIjp7InVybCI6Imh0dHA6Ly90ZXh0dXJlcy5taW5lY3JhZnQubmV0L3RleHR1cmUv" + Integer.toHexString(id * 31);
+    }
+
+}
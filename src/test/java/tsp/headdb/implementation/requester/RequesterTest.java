@@ -0,0 +1,129 @@
+package tsp.headdb.implementation.requester;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tsp.headdb.implementation.category.Category;
+import tsp.headdb.implementation.head.Head;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequesterTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String BODY = """
+            [
+              {"id": 1, "uuid": "00000000-0000-0000-0000-000000000001", "name": "Apple", "value": "texture-1", "tags": "food"},
+              {"id": 2, "uuid": "00000000-0000-0000-0000-000000000002", "name": "Banana", "value": "texture-2", "tags": "food"},
+              {"id": 3, "uuid": "00000000-0000-0000-0000-000000000003", "name": "Cherry", "value": "texture-3", "tags": null}
+            ]
+            """;
+
+    private final List<String> conditions = new ArrayList<>(); // If-None-Match of every request, empty if not sent
+    private final Set<Integer> blocked = new HashSet<>();
+    private HttpServer server;
+    private Requester requester;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+            synchronized (conditions) {
+                conditions.add(condition != null ? condition : "");
+            }
+
+            if (ETAG.equals(condition)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        requester = new Requester(null, HeadProvider.HEAD_STORAGE, "HeadDB/test", (provider, category) -> base + category.getName() + ".json", () -> new HashSet<>(blocked), message -> {});
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void notModifiedReusesHeads() {
+        blocked.add(2);
+        List<Head> first = fetch();
+        assertEquals(List.of(1, 3), ids(first));
+
+        List<Head> second = fetch();
+        assertEquals(List.of("", ETAG), conditions);
+        assertSame(first, second, "A 304 must return the heads of the previous response");
+    }
+
+    @Test
+    void blockedHeadsFilteredOnBothPaths() {
+        blocked.add(2);
+        List<Head> first = fetch();
+        assertEquals(List.of(1, 3), ids(first));
+
+        // Blocking more heads keeps the request conditional, the previous heads are filtered
+        blocked.add(3);
+        List<Head> notModified = fetch();
+        assertEquals(ETAG, conditions.get(1));
+        assertEquals(List.of(1), ids(notModified));
+        assertSame(first.get(0), notModified.get(0));
+
+        // Unblocking a head filtered from the previous response requires the full response again
+        blocked.remove(2);
+        List<Head> full = fetch();
+        assertEquals("", conditions.get(2));
+        assertEquals(List.of(1, 2), ids(full));
+
+        assertEquals(List.of(1, 2), ids(fetch()));
+        assertEquals(ETAG, conditions.get(3));
+    }
+
+    @Test
+    void resolvesFields() {
+        List<Head> heads = fetch();
+        Head cherry = heads.get(2);
+        assertEquals(3, cherry.getId());
+        assertEquals("Cherry", cherry.getName());
+        assertEquals("texture-3", cherry.getTexture());
+        assertEquals("", cherry.getTags());
+        assertEquals(Category.FOOD_DRINKS, cherry.getCategory());
+        assertEquals("00000000-0000-0000-0000-000000000003", cherry.getUniqueId().toString());
+    }
+
+    private List<Head> fetch() {
+        AtomicReference<List<Head>> result = new AtomicReference<>();
+        requester.fetchAndResolve(Category.FOOD_DRINKS, result::set);
+        assertNotNull(result.get(), "No heads were returned");
+        return result.get();
+    }
+
+    private static List<Integer> ids(List<Head> heads) {
+        return heads.stream().map(Head::getId).toList();
+    }
+
+}